@@ -18,6 +18,7 @@
 package eu.delving.sip;
 
 import eu.delving.groovy.GroovyCodeResource;
+import eu.delving.groovy.MappingClassCache;
 import eu.delving.metadata.CachedResourceResolver;
 import eu.delving.metadata.RecMapping;
 import eu.delving.schema.SchemaRepository;
@@ -198,7 +199,8 @@ public class Application {
         feedback = new VisualFeedback(home, desktop, sipProperties.getProp());
 
         // Initialize SipModel
-        GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader());
+        GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader(),
+                new MappingClassCache(HomeDirectory.CLASSES_DIR));
         // todo: be sure to set this
         String serverUrl = sipProperties.getProp().getProperty(NARTHEX_URL, "http://delving.org/narthex");
         HttpClient httpClient = createHttpClient(serverUrl).build();
@@ -17,6 +17,7 @@
 
 package eu.delving.sip.cli;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -25,11 +26,16 @@ import java.nio.file.Paths;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 
+import javax.xml.stream.XMLStreamException;
+
 import eu.delving.sip.Application;
+import eu.delving.sip.base.CancelException;
+import eu.delving.sip.base.ProgressListener;
 import eu.delving.sip.model.FactModel;
 import eu.delving.sip.xml.AnalysisParser;
 import eu.delving.stats.Stats;
@@ -38,25 +44,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.delving.groovy.GroovyCodeResource;
+import eu.delving.groovy.MappingClassCache;
 import eu.delving.metadata.RecDef;
 import eu.delving.metadata.RecDefTree;
 import eu.delving.metadata.RecMapping;
 import eu.delving.sip.cli.SIPFilesFinder.SIPFiles;
 import eu.delving.sip.files.DataSet;
+import eu.delving.sip.files.HomeDirectory;
+import eu.delving.sip.files.PocketStore;
+import eu.delving.sip.files.SourceCache;
+import eu.delving.sip.files.Storage;
 import eu.delving.sip.files.StorageException;
+import eu.delving.sip.files.StorageHelper;
+import eu.delving.sip.files.ZipSourceImporter;
 import eu.delving.sip.grpc.MappingServer;
 import eu.delving.sip.model.SipModel;
 import eu.delving.sip.xml.FileProcessor;
+import eu.delving.sip.xml.MetadataParser;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import static eu.delving.sip.files.Storage.MAX_UNIQUE_VALUE_LENGTH;
+import static eu.delving.sip.files.Storage.POCKET_STORE_ENABLED;
+import static eu.delving.sip.files.Storage.SOURCE_CACHE_ENABLED;
 
 @Command(name = "sipcli", description = "SIP (Submission Information Package) Processing Tool", subcommands = {
         ProcessCommand.class,
         AnalyzeCommand.class,
+        MergeCommand.class,
+        ImportCommand.class,
         CheckCommand.class,
         ListCommand.class,
         CleanCommand.class,
@@ -96,6 +114,13 @@ public class SIPCLI implements Callable<Integer> {
         System.out.println("Source file: " + sipFiles.getSourceFile());
     }
 
+    static int maxUniqueValueLength() {
+        // See StatsModel::getMaxUniqueValueLength()
+        FactModel hintsModel = new FactModel();
+        String max = hintsModel.get(MAX_UNIQUE_VALUE_LENGTH);
+        return max == null ? Stats.DEFAULT_MAX_UNIQUE_VALUE_LENGTH : Integer.parseInt(max);
+    }
+
     static void logTimingResults(long startTime, long endTime) {
         long totalTime = endTime - startTime;
         System.out.println("Total execution time: " + totalTime + "ms");
@@ -105,7 +130,8 @@ public class SIPCLI implements Callable<Integer> {
 @Command(name = "process", description = "Process a SIP directory with mapping")
 class ProcessCommand implements Callable<Integer> {
     private static final Logger logger = LoggerFactory.getLogger(ProcessCommand.class);
-    private final GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader());
+    private final GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader(),
+            new MappingClassCache(HomeDirectory.CLASSES_DIR));
 
     @Parameters(index = "0", description = "SIP directory path")
     private String sipDirPath;
@@ -126,6 +152,39 @@ class ProcessCommand implements Callable<Integer> {
     @Option(names = { "-a", "--all" }, description = "Process all datasets in the SIP directory")
     private boolean processAll = false;
 
+    @Option(names = { "--analyze" }, description = "Also gather source statistics in the same pass, replacing a separate analyze run")
+    private boolean analyze = false;
+
+    @Option(names = { "--shard" }, description = "Process only shard i of N (as i/N), to be combined later with merge")
+    private String shard;
+
+    @Option(names = { "--drop-duplicates" }, description = "Leave records with an already seen id out of the output")
+    private boolean dropDuplicates = false;
+
+    @Option(names = { "--max-record-size" }, description = "Reject records with more characters of content than this (0 for no limit)")
+    private long maxRecordSize = 0;
+
+    @Option(names = { "--max-record-elements" }, description = "Reject records with more elements than this (0 for no limit)")
+    private int maxRecordElements = 0;
+
+    @Option(names = { "--max-record-depth" }, description = "Reject records nested deeper than this (0 for no limit)")
+    private int maxRecordDepth = 0;
+
+    @Option(names = { "--queue-heap-fraction" }, description = "Fraction of the maximum heap that records waiting for the mapping engines may take", defaultValue = "0.25")
+    private double queueHeapFraction;
+
+    @Option(names = { "--source-cache" }, description = "Keep an uncompressed, memory-mapped copy of the source in the dataset directory for repeated passes")
+    private boolean sourceCache = false;
+
+    @Option(names = { "--pocket-store" }, description = "Keep a binary copy of the source records for passes without statistics or record limits")
+    private boolean pocketStore = false;
+
+    @Option(names = { "--static-navigation" }, description = "Generate mapping code that navigates the input with typed calls instead of dynamic property access")
+    private boolean staticNavigation = false;
+
+    @Option(names = { "--precompile-patterns" }, description = "Compile the literal regular expressions of the mapping code before processing starts")
+    private boolean precompilePatterns = false;
+
     @Override
     public Integer call() {
         try {
@@ -323,8 +382,32 @@ class ProcessCommand implements Callable<Integer> {
         String[] parts = mappingFileName.split("__");
         String prefix = (parts.length > 1 ? parts[1] : parts[0]).replace(".xml", "");
 
+        if (sourceCache) {
+            sipFiles.getProperties().setProperty(SOURCE_CACHE_ENABLED, "true");
+        }
+        if (pocketStore) {
+            sipFiles.getProperties().setProperty(POCKET_STORE_ENABLED, "true");
+        }
         RecMapping recMapping = getRecMapping(sipFiles.getMappingFile(), sipFiles.getRecordDefinition());
         FileProcessor processor = createFileProcessor(sourceXML, recMapping, prefix);
+        processor.setDropDuplicates(dropDuplicates);
+        processor.setRecordLimits(maxRecordSize, maxRecordElements, maxRecordDepth);
+        processor.setQueueHeapFraction(queueHeapFraction);
+        processor.setStaticNavigation(staticNavigation);
+        processor.setPrecompilePatterns(precompilePatterns);
+        int shardIndex = 0;
+        if (shard != null) {
+            String[] shardParts = shard.split("/");
+            if (shardParts.length != 2) {
+                throw new IllegalArgumentException("Shard must be given as i/N: " + shard);
+            }
+            shardIndex = Integer.parseInt(shardParts[0]);
+            processor.setShard(shardIndex, Integer.parseInt(shardParts[1]));
+        }
+        if (analyze && shardIndex == 0) {
+            // every shard parses the whole source, so one of them is enough
+            processor.setGatherStats(SIPCLI.maxUniqueValueLength());
+        }
         CLIProgressListener progressListener = new CLIProgressListener(sourceXML.getSpec());
         processor.setProgressListener(progressListener);
 
@@ -458,12 +541,7 @@ class AnalyzeCommand implements Callable<Integer> {
     }
 
     private void processDataset(SIPFiles sipFiles, DataSet sourceXML) throws IOException {
-        // See StatsModel::getMaxUniqueValueLength()
-        FactModel hintsModel = new FactModel();
-        String max = hintsModel.get(MAX_UNIQUE_VALUE_LENGTH);
-        int maxUniqueValueLength = max == null ? Stats.DEFAULT_MAX_UNIQUE_VALUE_LENGTH : Integer.parseInt(max);
-
-        AnalysisParser processor = new AnalysisParser(sourceXML, null, maxUniqueValueLength, new AnalysisParser.Listener() {
+        AnalysisParser processor = new AnalysisParser(sourceXML, null, SIPCLI.maxUniqueValueLength(), new AnalysisParser.Listener() {
             @Override
             public void success(Stats stats) {
                 try {
@@ -485,6 +563,129 @@ class AnalyzeCommand implements Callable<Integer> {
     }
 }
 
+@Command(name = "merge", description = "Merge the output of separately processed shards")
+class MergeCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(MergeCommand.class);
+
+    @Parameters(index = "0", description = "SIP directory path")
+    private String sipDirPath;
+
+    @Option(names = { "--shards" }, required = true, description = "Number of shards that were processed")
+    private int shardCount;
+
+    @Option(names = { "-d", "--dataset" }, description = "Specific dataset to merge")
+    private String datasetName;
+
+    @Override
+    public Integer call() {
+        try {
+            String userDir = Objects.requireNonNull(System.getProperty("user.dir"));
+            Path workingDir = Paths.get(userDir);
+            Path sipDir = SIPCLI.resolve(workingDir, sipDirPath);
+
+            if (!Files.exists(sipDir) || !Files.isDirectory(sipDir)) {
+                throw new IllegalStateException("Invalid SIP directory: " + sipDir);
+            }
+
+            SIPFiles sipFiles = SIPFilesFinder.findRequiredFiles(sipDir);
+            DataSet dataset;
+            if (datasetName != null) {
+                dataset = sipFiles.getStorage().getDataSets().get(datasetName);
+                if (dataset == null) {
+                    throw new IllegalArgumentException("Dataset not found: " + datasetName);
+                }
+            } else {
+                dataset = sipFiles.getStorage().createDataSet(sipFiles.getSipDir().getFileName().toString());
+            }
+
+            String prefix = getRecMapping(sipFiles.getMappingFile(), sipFiles.getRecordDefinition()).getPrefix();
+            dataset.mergeShards(prefix, shardCount, new Date());
+            System.out.printf("Merged %d shards of %s%n", shardCount, dataset.getSpec());
+            return 0;
+        } catch (Exception e) {
+            logger.error("Error merging shards", e);
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private RecMapping getRecMapping(Path mappingFile, Path recDefFile) throws IOException {
+        try (FileInputStream mappingStream = new FileInputStream(mappingFile.toFile());
+                FileInputStream recDefStream = new FileInputStream(recDefFile.toFile())) {
+
+            RecDef recDef = RecDef.read(recDefStream);
+            RecDefTree recDefTree = RecDefTree.create(recDef);
+            return RecMapping.read(mappingStream, recDefTree);
+        }
+    }
+}
+
+@Command(name = "import", description = "Import a zip of xml files as the source of a SIP directory")
+class ImportCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(ImportCommand.class);
+
+    @Parameters(index = "0", description = "SIP directory path")
+    private String sipDirPath;
+
+    @Parameters(index = "1", description = "Zip file with the xml files to import")
+    private String zipPath;
+
+    @Option(names = { "--threads" }, description = "Number of threads converting entries (default: number of processors)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = { "--pocket-store" }, description = "Also write the binary copy of the source records which process --pocket-store reads")
+    private boolean pocketStore = false;
+
+    @Override
+    public Integer call() {
+        try {
+            String userDir = Objects.requireNonNull(System.getProperty("user.dir"));
+            Path workingDir = Paths.get(userDir);
+            Path sipDir = SIPCLI.resolve(workingDir, sipDirPath);
+            Path zipFile = SIPCLI.resolve(workingDir, zipPath);
+
+            if (!Files.exists(sipDir) || !Files.isDirectory(sipDir)) {
+                throw new IllegalStateException("Invalid SIP directory: " + sipDir);
+            }
+            if (!Files.isRegularFile(zipFile)) {
+                throw new IllegalStateException("Zip file not found: " + zipFile);
+            }
+
+            CLIProgressListener progressListener = new CLIProgressListener(sipDir.getFileName().toString());
+            ZipSourceImporter importer = new ZipSourceImporter(zipFile.toFile(), threads);
+            File source = importer.importInto(sipDir.toFile(), progressListener);
+            progressListener.finalizeLine();
+            System.out.printf("Imported %d records into %s%n", importer.getPocketCount(), source);
+            if (pocketStore) {
+                File pockets = new File(sipDir.toFile(), Storage.FileType.SOURCE_POCKETS.getName());
+                writePocketStore(source, pockets, importer.getPocketCount(), progressListener);
+                progressListener.finalizeLine();
+                System.out.printf("Stored %d records in %s%n", importer.getPocketCount(), pockets);
+            }
+            return 0;
+        } catch (Exception e) {
+            logger.error("Error importing source", e);
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static void writePocketStore(File source, File pockets, int recordCount, ProgressListener progressListener)
+            throws StorageException, IOException, XMLStreamException, CancelException {
+        MetadataParser parser = new MetadataParser(StorageHelper.zipIn(source), recordCount);
+        try (PocketStore.Writer writer = new PocketStore.Writer(pockets, SourceCache.stamp(source))) {
+            parser.setPocketWriter(writer);
+            parser.setProgressListener(progressListener);
+            while (parser.nextRecord() != null) {
+                // the parser appends every record to the store
+            }
+            writer.finish();
+        } finally {
+            parser.close();
+        }
+    }
+}
+
 @Command(name = "check", description = "Check a SIP directory structure")
 class CheckCommand implements Callable<Integer> {
     private static final Logger logger = LoggerFactory.getLogger(CheckCommand.class);
@@ -68,6 +68,18 @@ public interface DataSet extends Comparable<DataSet> {
 
     InputStream openSourceInputStream() throws StorageException;
 
+    /**
+     * @return a reader of the binary pocket store made from the current source, or null if
+     * the store is not enabled or has not been written for this source
+     */
+    PocketStore.Reader openPocketStore() throws StorageException;
+
+    /**
+     * @return a writer for the binary pocket store of the current source, or null if the
+     * store is not enabled
+     */
+    PocketStore.Writer createPocketStore() throws StorageException;
+
     File targetOutput() throws StorageException;
 
     Stats getStats();
@@ -104,10 +116,21 @@ public interface DataSet extends Comparable<DataSet> {
      */
     File getLatestProcessedFile();
 
+    /**
+     * Combine the processed output and reports written by the shards of a partitioned
+     * run into the standard files, removing the shard parts afterwards.
+     */
+    void mergeShards(String prefix, int shardCount, Date time) throws StorageException;
+
     void deleteSource();
 
     void fromSipZip(File sipZipFile, ProgressListener progressListener) throws IOException, StorageException;
 
+    /**
+     * Replace the source with the pockets converted from the xml files in a zip.
+     */
+    void importZipSource(File zipFile, ProgressListener progressListener) throws StorageException;
+
     File toSipZip(boolean sourceIncluded) throws StorageException;
 
     void remove() throws StorageException;
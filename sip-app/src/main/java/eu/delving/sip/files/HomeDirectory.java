@@ -33,6 +33,7 @@ public class HomeDirectory {
     public static final String WORK_DIR_NAME = "work";
     public static final String UP_DIR_NAME = "up";
     public static final String RECORD_DIR_NAME = "records";
+    public static final String CLASSES_DIR_NAME = "classes";
 
     // Legacy static final directory assignments for single-project PocketMappers
     // WORKSPACE_DIR still used for accessing the PocketMapper directory
@@ -40,6 +41,8 @@ public class HomeDirectory {
     public static final File WORK_DIR = new File(WORKSPACE_DIR, WORK_DIR_NAME);
     public static final File UP_DIR = new File(WORKSPACE_DIR, UP_DIR_NAME);
     public static final File RECORD_DIR = new File(WORKSPACE_DIR, RECORD_DIR_NAME);
+    // compiled mapping scripts are shared by all projects
+    public static final File CLASSES_DIR = new File(WORKSPACE_DIR, CLASSES_DIR_NAME);
 
     // New static but non-final directory assignments for multi-project PocketMappers
     // (private: use get-methods instead)
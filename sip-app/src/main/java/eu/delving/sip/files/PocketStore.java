@@ -0,0 +1,316 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import eu.delving.groovy.GroovyNode;
+import eu.delving.groovy.MetadataRecord;
+import groovy.namespace.QName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary copy of the pockets of a source, holding the GroovyNode tree of every record
+ * so that later passes can rebuild the trees without tokenizing XML again.
+ * <p/>
+ * The file starts with a magic number, a version and the stamp of the source it was made
+ * from. Then come the records, each an int length followed by the record number, a table
+ * of the names used in the record, and its tree as a stream of element, attribute, text
+ * and end opcodes referring to that table. The file ends with the record count and the
+ * magic number again, so an unfinished file is recognized and ignored.
+ *
+ */
+
+public class PocketStore {
+    private static final int MAGIC = 0x504F434B; // POCK
+    private static final int VERSION = 2;
+    private static final int TRAILER_SIZE = 4 + 4;
+    private static final int NODE_OVERHEAD = 200;
+    private static final byte ELEMENT = 1, ATTRIBUTE = 2, TEXT = 3, END = 4;
+    private static final String INPROGRESS_SUFFIX = ".inprogress";
+
+    public static class Writer implements Closeable {
+        private final File file, inProgress;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(8192);
+        private final ByteArrayOutputStream treeBytes = new ByteArrayOutputStream(8192);
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int count;
+        private boolean finished;
+
+        public Writer(File file, String stamp) throws IOException {
+            this.file = file;
+            this.inProgress = new File(file.getParentFile(), file.getName() + INPROGRESS_SUFFIX);
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(inProgress), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, stamp);
+        }
+
+        public void append(MetadataRecord record) throws IOException {
+            nameIndex.clear();
+            names.clear();
+            treeBytes.reset();
+            writeNode(new DataOutputStream(treeBytes), record.getRootNode());
+            recordBytes.reset();
+            DataOutputStream recordOut = new DataOutputStream(recordBytes);
+            writeVarInt(recordOut, record.getRecordNumber());
+            writeVarInt(recordOut, names.size());
+            for (String name : names) {
+                writeString(recordOut, name);
+            }
+            treeBytes.writeTo(recordOut);
+            out.writeInt(recordBytes.size());
+            recordBytes.writeTo(out);
+            count++;
+        }
+
+        private void writeNode(DataOutputStream treeOut, GroovyNode node) throws IOException {
+            QName qName = node.qName();
+            treeOut.writeByte(ELEMENT);
+            writeVarInt(treeOut, name(qName.getNamespaceURI()));
+            writeVarInt(treeOut, name(qName.getLocalPart()));
+            writeVarInt(treeOut, name(qName.getPrefix()));
+            for (Map.Entry<String, String> attribute : node.attributes().entrySet()) {
+                treeOut.writeByte(ATTRIBUTE);
+                writeVarInt(treeOut, name(attribute.getKey()));
+                writeString(treeOut, attribute.getValue());
+            }
+            if (node.text != null && !node.text.isEmpty()) {
+                treeOut.writeByte(TEXT);
+                writeString(treeOut, node.text);
+            }
+            for (GroovyNode child : node.getChildren()) {
+                writeNode(treeOut, child);
+            }
+            treeOut.writeByte(END);
+        }
+
+        private int name(String name) {
+            Integer index = nameIndex.get(name);
+            if (index == null) {
+                index = names.size();
+                nameIndex.put(name, index);
+                names.add(name);
+            }
+            return index;
+        }
+
+        /**
+         * Write the trailer and move the finished file into place.
+         */
+        public void finish() throws IOException {
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.close();
+            finished = true;
+            if (file.exists() && !file.delete() || !inProgress.renameTo(file)) {
+                throw new IOException(String.format("Unable to rename %s to %s", inProgress, file));
+            }
+        }
+
+        /**
+         * Close without finishing, leaving no file behind.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                if (inProgress.exists() && !inProgress.delete()) {
+                    throw new IOException("Unable to delete " + inProgress);
+                }
+            }
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final File file;
+        private final DataInputStream in;
+        private final int recordCount;
+        private int recordIndex;
+        private long recordSizeEstimate;
+
+        private Reader(File file, DataInputStream in, int recordCount) {
+            this.file = file;
+            this.in = in;
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * @return a reader positioned at the first record, or null if the file is missing,
+         * unfinished, of another version, or made from a different source
+         */
+        public static Reader open(File file, String stamp) throws IOException {
+            if (!file.exists() || file.length() < TRAILER_SIZE) {
+                return null;
+            }
+            int count;
+            try (RandomAccessFile trailer = new RandomAccessFile(file, "r")) {
+                trailer.seek(file.length() - TRAILER_SIZE);
+                count = trailer.readInt();
+                if (trailer.readInt() != MAGIC) {
+                    return null;
+                }
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new SourceCache.MappedInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !stamp.equals(readString(in))) {
+                    in.close();
+                    return null;
+                }
+            } catch (EOFException e) {
+                in.close();
+                return null;
+            }
+            return new Reader(file, in, count);
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return the next record in source order, or null after the last one
+         */
+        public MetadataRecord nextRecord() throws IOException {
+            if (recordIndex == recordCount) {
+                return null;
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            recordIndex++;
+            return decode(bytes);
+        }
+
+        /**
+         * @return the number of records read so far
+         */
+        public int getRecordIndex() {
+            return recordIndex;
+        }
+
+        /**
+         * A rough estimate of the heap taken by the tree of the record last returned,
+         * computed the same way as MetadataParser does.
+         */
+        public long getRecordSizeEstimate() {
+            return recordSizeEstimate;
+        }
+
+        private MetadataRecord decode(byte[] bytes) throws IOException {
+            DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(bytes));
+            int recordNumber = readVarInt(recordIn);
+            String[] names = new String[readVarInt(recordIn)];
+            for (int walk = 0; walk < names.length; walk++) {
+                names[walk] = readString(recordIn);
+            }
+            GroovyNode root = null, node = null;
+            long characters = 0;
+            int elements = 0;
+            while (true) {
+                byte opcode = recordIn.readByte();
+                switch (opcode) {
+                    case ELEMENT:
+                        String namespaceUri = names[readVarInt(recordIn)];
+                        String localName = names[readVarInt(recordIn)];
+                        String prefix = names[readVarInt(recordIn)];
+                        node = new GroovyNode(node, namespaceUri, localName, prefix);
+                        if (root == null) {
+                            root = node;
+                        }
+                        elements++;
+                        break;
+                    case ATTRIBUTE:
+                        String key = names[readVarInt(recordIn)];
+                        String value = readString(recordIn);
+                        node.attributes().put(key, value);
+                        characters += value.length();
+                        break;
+                    case TEXT:
+                        node.setNodeValue(readString(recordIn));
+                        characters += node.text.length();
+                        break;
+                    case END:
+                        node = node.parent();
+                        if (node == null) {
+                            recordSizeEstimate = 2 * characters + NODE_OVERHEAD * elements;
+                            return MetadataRecord.create(root, recordNumber, recordCount);
+                        }
+                        break;
+                    default:
+                        throw new IOException(String.format("Corrupt pocket store %s: opcode %d", file, opcode));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
@@ -20,6 +20,8 @@ package eu.delving.sip.files;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import eu.delving.groovy.MetadataRecord;
 import eu.delving.groovy.XmlNodePrinter;
 import eu.delving.metadata.MappingResult;
@@ -28,6 +30,7 @@ import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,20 +39,28 @@ import static org.apache.commons.io.FileUtils.deleteQuietly;
 
 /**
  * Describes how a report is written during dataset processing
- *
+ * <p/>
+ * Records are reported under their id. Duplicates go to a section of their own keyed by
+ * record number, since their id is shared with the record seen first, which may have an
+ * entry of its own. They are collected in a side file while processing and copied into
+ * the report when it is finished.
  *
  */
 
 public class ReportWriter {
+    private static final String DUPLICATES_SUFFIX = ".duplicates";
     private File reportJsonFile;
     private JsonGenerator json = null;
+    private JsonGenerator duplicatesJson = null;
     private Map<ReportType, AtomicInteger> counters = new HashMap<>();
 
     public enum ReportType {
         INVALID,
         DISCARDED,
         UNEXPECTED,
-        WARNING
+        WARNING,
+        DUPLICATE,
+        REJECTED
     }
 
     public ReportWriter(File reportJsonFile)
@@ -151,21 +162,78 @@ public class ReportWriter {
         }
     }
 
+    public void duplicate(MetadataRecord inputRecord, int firstRecordNumber, boolean dropped) throws IOException {
+        counters.get(ReportType.DUPLICATE).incrementAndGet();
+        if (json != null) {
+            if (duplicatesJson == null) {
+                duplicatesJson = JsonFactory.builder().build().createGenerator(duplicatesFile(), JsonEncoding.UTF8);
+                duplicatesJson.writeStartObject();
+            }
+            duplicatesJson.writeFieldName(String.valueOf(inputRecord.getRecordNumber()));
+            duplicatesJson.writeStartObject();
+            duplicatesJson.writeFieldName("type");
+            duplicatesJson.writeString(ReportType.DUPLICATE.name());
+            duplicatesJson.writeFieldName("id");
+            duplicatesJson.writeString(inputRecord.getId());
+            duplicatesJson.writeFieldName("recordNumber");
+            duplicatesJson.writeNumber(inputRecord.getRecordNumber());
+            duplicatesJson.writeFieldName("firstRecordNumber");
+            duplicatesJson.writeNumber(firstRecordNumber);
+            duplicatesJson.writeFieldName("dropped");
+            duplicatesJson.writeBoolean(dropped);
+            duplicatesJson.writeFieldName("message");
+            duplicatesJson.writeString(String.format("Duplicate id %s, first seen at record %d%s",
+                    inputRecord.getId(), firstRecordNumber, dropped ? " (dropped)" : ""));
+            duplicatesJson.writeEndObject();
+        }
+    }
+
+    public void rejected(String id, int recordNumber, String message) throws IOException {
+        counters.get(ReportType.REJECTED).incrementAndGet();
+        if (json != null) {
+            json.writeFieldName(id);
+            json.writeStartObject();
+            json.writeFieldName("type");
+            json.writeString(ReportType.REJECTED.name());
+            json.writeFieldName("recordNumber");
+            json.writeNumber(recordNumber);
+            json.writeFieldName("message");
+            json.writeString(message);
+            json.writeEndObject();
+        }
+    }
+
     public void abort() {
         try {
             if (json != null) {
                 json.close();
             }
+            if (duplicatesJson != null) {
+                duplicatesJson.close();
+            }
         } catch (IOException e) {
             throw new RuntimeException("Unable to close", e);
         }
         deleteQuietly(reportJsonFile);
+        if (reportJsonFile != null) {
+            deleteQuietly(duplicatesFile());
+        }
     }
 
     public void finish(int totalCount, int processedCount) {
         try {
             if (json != null) {
                 json.writeEndObject();
+                if (duplicatesJson != null) {
+                    duplicatesJson.writeEndObject();
+                    duplicatesJson.close();
+                    json.writeFieldName("duplicates");
+                    try (JsonParser in = JsonFactory.builder().build().createParser(duplicatesFile())) {
+                        in.nextToken();
+                        json.copyCurrentStructure(in);
+                    }
+                    deleteQuietly(duplicatesFile());
+                }
                 json.writeFieldName("conclusions");
                 json.writeStartObject();
                 json.writeFieldName("total");
@@ -185,6 +253,93 @@ public class ReportWriter {
         }
     }
 
+    /**
+     * Combine the reports of the shards of a partitioned run into one report,
+     * keeping all record and duplicate entries and summing the conclusions.
+     */
+    public static void merge(List<File> partFiles, File reportJsonFile) throws IOException {
+        JsonFactory jsonFactory = JsonFactory.builder().build();
+        Map<String, Long> conclusions = new LinkedHashMap<>();
+        boolean duplicates = false;
+        try (JsonGenerator out = jsonFactory.createGenerator(reportJsonFile, JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeFieldName("records");
+            out.writeStartObject();
+            for (File partFile : partFiles) {
+                try (JsonParser in = openReport(jsonFactory, partFile)) {
+                    while (in.nextFieldName() != null) {
+                        String section = in.currentName();
+                        in.nextToken();
+                        switch (section) {
+                            case "records":
+                                copyFields(in, out);
+                                break;
+                            case "duplicates":
+                                duplicates = true;
+                                in.skipChildren();
+                                break;
+                            case "conclusions":
+                                while (in.nextToken() == JsonToken.FIELD_NAME) {
+                                    String name = in.currentName();
+                                    in.nextToken();
+                                    conclusions.merge(name, in.getLongValue(), Long::sum);
+                                }
+                                break;
+                            default:
+                                in.skipChildren();
+                        }
+                    }
+                }
+            }
+            out.writeEndObject();
+            if (duplicates) {
+                out.writeFieldName("duplicates");
+                out.writeStartObject();
+                for (File partFile : partFiles) {
+                    try (JsonParser in = openReport(jsonFactory, partFile)) {
+                        while (in.nextFieldName() != null) {
+                            String section = in.currentName();
+                            in.nextToken();
+                            if ("duplicates".equals(section)) {
+                                copyFields(in, out);
+                            } else {
+                                in.skipChildren();
+                            }
+                        }
+                    }
+                }
+                out.writeEndObject();
+            }
+            out.writeFieldName("conclusions");
+            out.writeStartObject();
+            for (Map.Entry<String, Long> entry : conclusions.entrySet()) {
+                out.writeFieldName(entry.getKey());
+                out.writeNumber(entry.getValue());
+            }
+            out.writeEndObject();
+            out.writeEndObject();
+        }
+    }
+
+    private static JsonParser openReport(JsonFactory jsonFactory, File partFile) throws IOException {
+        JsonParser in = jsonFactory.createParser(partFile);
+        if (in.nextToken() != JsonToken.START_OBJECT) {
+            in.close();
+            throw new IOException("Not a report: " + partFile);
+        }
+        return in;
+    }
+
+    private static void copyFields(JsonParser in, JsonGenerator out) throws IOException {
+        while (in.nextToken() == JsonToken.FIELD_NAME) {
+            out.copyCurrentStructure(in);
+        }
+    }
+
+    private File duplicatesFile() {
+        return new File(reportJsonFile.getParentFile(), reportJsonFile.getName() + DUPLICATES_SUFFIX);
+    }
+
     private String toXml(MappingResult result, Map<String, String> facts) {
         return result.toXml(facts);
     }
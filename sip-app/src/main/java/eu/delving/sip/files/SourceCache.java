@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static eu.delving.sip.files.Storage.FileType.SOURCE_CACHE;
+
+/**
+ * An uncompressed copy of a dataset's compressed source, kept next to it so that repeated
+ * passes over the source read it through memory-mapped buffers instead of decompressing
+ * it every time. A stamp file records the name, length and modification time of the
+ * source that the copy was made from, and the copy is rebuilt when these no longer match.
+ * <p/>
+ * Several processes can share the cache, like the shards of one dataset. Each writes its
+ * copy and stamp under a temporary name of its own and moves them into place atomically, so
+ * a reader finds either the old files or the new ones, and a valid copy is only replaced
+ * once a new one is complete.
+ * <p/>
+ * On Windows a file cannot be replaced or deleted while it is mapped, and the mapping only
+ * goes when its buffer is garbage collected, so streams drop their buffer when closed. A copy
+ * that delete cannot remove is left without its stamp, and is replaced by the first build
+ * once nothing maps it any more, at the latest on the next start. Until then, a stale copy
+ * which cannot be replaced makes open read the compressed source.
+ *
+ */
+
+public class SourceCache {
+    private static final String STAMP_SUFFIX = ".stamp";
+    private static final String INPROGRESS_SUFFIX = ".inprogress";
+    private final File cacheFile;
+    private final File stampFile;
+
+    public SourceCache(File dir) {
+        this.cacheFile = new File(dir, SOURCE_CACHE.getName());
+        this.stampFile = new File(dir, SOURCE_CACHE.getName() + STAMP_SUFFIX);
+    }
+
+    public InputStream open(File source) throws StorageException {
+        // only one thread of this process builds, other processes may build at the same time
+        synchronized (SourceCache.class) {
+            if (!isValidFor(source) && !build(source)) {
+                return StorageHelper.zipIn(source);
+            }
+        }
+        try {
+            return new MappedInputStream(cacheFile);
+        } catch (IOException e) {
+            throw new StorageException(String.format("Unable to map source cache %s", cacheFile.getAbsolutePath()), e);
+        }
+    }
+
+    public boolean isValidFor(File source) {
+        if (!cacheFile.exists() || !stampFile.exists()) {
+            return false;
+        }
+        try {
+            return stamp(source).equals(FileUtils.readFileToString(stampFile, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void delete() {
+        // the stamp goes first, so a copy which is still mapped is no longer valid
+        FileUtils.deleteQuietly(stampFile);
+        FileUtils.deleteQuietly(cacheFile);
+    }
+
+    /**
+     * @return false if a stale copy which is still mapped could not be replaced
+     */
+    private boolean build(File source) throws StorageException {
+        Path cachePath = cacheFile.toPath();
+        Path inProgress = null;
+        Path stampInProgress = null;
+        try {
+            inProgress = Files.createTempFile(cachePath.getParent(), cacheFile.getName(), INPROGRESS_SUFFIX);
+            try (InputStream in = StorageHelper.zipIn(source); OutputStream out = Files.newOutputStream(inProgress)) {
+                IOUtils.copy(in, out, 1024 * 1024);
+            }
+            try {
+                Files.move(inProgress, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileSystemException e) {
+                FileUtils.deleteQuietly(inProgress.toFile());
+                return isValidFor(source);
+            }
+            stampInProgress = Files.createTempFile(cachePath.getParent(), stampFile.getName(), INPROGRESS_SUFFIX);
+            Files.write(stampInProgress, stamp(source).getBytes(StandardCharsets.UTF_8));
+            Files.move(stampInProgress, stampFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            for (Path leftOver : new Path[]{inProgress, stampInProgress}) {
+                if (leftOver != null) {
+                    FileUtils.deleteQuietly(leftOver.toFile());
+                }
+            }
+            // another process may have put a copy of the same source in place meanwhile
+            if (isValidFor(source)) {
+                return true;
+            }
+            throw new StorageException(String.format("Unable to decompress %s into the source cache", source.getAbsolutePath()), e);
+        }
+    }
+
+    static String stamp(File source) {
+        return String.format("%s %d %d", source.getName(), source.length(), source.lastModified());
+    }
+
+    /**
+     * Reads a file through memory-mapped buffers. A single buffer is limited to an int
+     * worth of bytes, so larger files are mapped one window at a time.
+     */
+
+    public static class MappedInputStream extends InputStream {
+        private static final long WINDOW_SIZE = 1L << 30;
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        public MappedInputStream(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            mapWindow(0);
+        }
+
+        private void mapWindow(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+        }
+
+        private ByteBuffer current() throws IOException {
+            if (window == null) {
+                throw new IOException("Stream closed");
+            }
+            if (!window.hasRemaining()) {
+                long next = windowStart + window.capacity();
+                if (next >= size) {
+                    return null;
+                }
+                mapWindow(next);
+            }
+            return window;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = current();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = current();
+            if (buffer == null) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            current();
+            long position = windowStart + window.position();
+            long target = Math.min(size, position + Math.max(count, 0));
+            if (target < windowStart + window.capacity()) {
+                window.position((int) (target - windowStart));
+            } else if (target < size) {
+                mapWindow(target);
+            } else {
+                window.position(window.capacity());
+            }
+            return target - position;
+        }
+
+        @Override
+        public int available() {
+            return window == null ? 0 : window.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the mapping outlives the channel until the buffer is collected
+            window = null;
+            channel.close();
+        }
+    }
+}
@@ -51,6 +51,8 @@ public interface Storage {
         REPORT_JSON("report.json", "report_", null, "report_%s.json", 10),
         PROCESSED("processed.rdf.zst", "processed_", null, "processed_%s.rdf.zst", 10),
         SOURCE_STATS_ZSTD("stats-source.xml.zst"),
+        SOURCE_CACHE("source.xml.cache"),
+        SOURCE_POCKETS("source.pockets"),
         FACTS_JSON("sip.json");
 
         private String name, prefix, suffix, pattern;
@@ -107,6 +109,9 @@ public interface Storage {
     String NARTHEX_PREFIX = "narthexPrefix";
     String CACHE_DIR = "__cache__";
     String FRAME_ARRANGEMENTS_FILE = "frame-arrangements.xml";
+    String SHARD_PART = "%s.part-%d";
+    String SOURCE_CACHE_ENABLED = "sourceCacheEnabled";
+    String POCKET_STORE_ENABLED = "pocketStoreEnabled";
 
     String POCKETS = "pockets";
     String POCKET = "pocket";
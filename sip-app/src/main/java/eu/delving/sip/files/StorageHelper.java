@@ -162,7 +162,7 @@ public class StorageHelper {
         return new File(dir, fileName);
     }
 
-    static InputStream zipIn(File file) throws StorageException {
+    public static InputStream zipIn(File file) throws StorageException {
         try {
             if (file.getName().endsWith((".zst"))) {
                 return new ZstdInputStream(new FileInputStream(file));
@@ -289,9 +289,42 @@ public class StorageImpl implements Storage {
 
         @Override
         public InputStream openSourceInputStream() throws StorageException {
+            if (sipProperties != null && "true".equals(sipProperties.getProperty(SOURCE_CACHE_ENABLED))) {
+                return new SourceCache(here).open(sourceFile(here));
+            }
             return zipIn(sourceFile(here));
         }
 
+        @Override
+        public PocketStore.Reader openPocketStore() throws StorageException {
+            if (!isPocketStoreEnabled()) {
+                return null;
+            }
+            File pocketFile = new File(here, FileType.SOURCE_POCKETS.getName());
+            try {
+                return PocketStore.Reader.open(pocketFile, SourceCache.stamp(sourceFile(here)));
+            } catch (IOException e) {
+                throw new StorageException(String.format("Unable to open pocket store %s", pocketFile.getAbsolutePath()), e);
+            }
+        }
+
+        @Override
+        public PocketStore.Writer createPocketStore() throws StorageException {
+            if (!isPocketStoreEnabled()) {
+                return null;
+            }
+            File pocketFile = new File(here, FileType.SOURCE_POCKETS.getName());
+            try {
+                return new PocketStore.Writer(pocketFile, SourceCache.stamp(sourceFile(here)));
+            } catch (IOException e) {
+                throw new StorageException(String.format("Unable to create pocket store %s", pocketFile.getAbsolutePath()), e);
+            }
+        }
+
+        private boolean isPocketStoreEnabled() {
+            return sipProperties != null && "true".equals(sipProperties.getProperty(POCKET_STORE_ENABLED));
+        }
+
         @Override
         public File getSourceFile() {
             return sourceFile(here);
@@ -518,10 +551,69 @@ public class StorageImpl implements Storage {
             return findOrNull(here, 0, new NameFileFilter(FileType.PROCESSED.getName(prefix)), FileType.PROCESSED);
         }
 
+        @Override
+        public void mergeShards(String prefix, int shardCount, Date time) throws StorageException {
+            List<File> processedParts = new ArrayList<>();
+            List<File> reportParts = new ArrayList<>();
+            for (int index = 0; index < shardCount; index++) {
+                String partPrefix = String.format(SHARD_PART, prefix, index);
+                File processedPart = findOrNull(here, 0, new NameFileFilter(FileType.PROCESSED.getName(partPrefix)), FileType.PROCESSED);
+                File reportPart = reportJsonFile(here, partPrefix);
+                if (processedPart == null || reportPart == null) {
+                    throw new StorageException(String.format("Missing output of shard %d/%d", index, shardCount));
+                }
+                processedParts.add(processedPart);
+                reportParts.add(reportPart);
+            }
+            String processedName = Hasher.prefixFileName(FileType.PROCESSED.getName(prefix), time);
+            File processedFile = new File(here, processedName + INPROGRESS_SUFFIX);
+            if (processedFile.exists() || new File(here, processedName).exists()) {
+                throw new StorageException("Merged output file already exists");
+            }
+            try (OutputStream outputStream = Files.newOutputStream(processedFile.toPath())) {
+                // a sequence of zstd frames is itself a valid zstd stream
+                for (File processedPart : processedParts) {
+                    Files.copy(processedPart.toPath(), outputStream);
+                }
+            } catch (IOException e) {
+                deleteQuietly(processedFile);
+                throw new StorageException("Unable to merge processed output", e);
+            }
+            String reportName = Hasher.prefixFileName(FileType.REPORT_JSON.getName(prefix), time);
+            File reportJson = new File(here, reportName + INPROGRESS_SUFFIX);
+            try {
+                ReportWriter.merge(reportParts, reportJson);
+            } catch (IOException e) {
+                deleteQuietly(processedFile);
+                deleteQuietly(reportJson);
+                throw new StorageException("Unable to merge reports", e);
+            }
+            finishProcessedOutput(prefix, time);
+            finishReportWriter(prefix, time);
+            for (int index = 0; index < shardCount; index++) {
+                String partPrefix = String.format(SHARD_PART, prefix, index);
+                for (File part : here.listFiles(new NameFileFilter(FileType.PROCESSED.getName(partPrefix)))) {
+                    delete(part);
+                }
+                for (File part : here.listFiles(new NameFileFilter(FileType.REPORT_JSON.getName(partPrefix)))) {
+                    delete(part);
+                }
+            }
+        }
+
         @Override
         public void deleteSource() {
             for (File file : findSourceFiles(here))
                 delete(file);
+            new SourceCache(here).delete();
+            delete(new File(here, FileType.SOURCE_POCKETS.getName()));
+        }
+
+        @Override
+        public void importZipSource(File zipFile, ProgressListener progressListener) throws StorageException {
+            deleteSource();
+            new ZipSourceImporter(zipFile, Runtime.getRuntime().availableProcessors())
+                    .importInto(here, progressListener);
         }
 
         @Override
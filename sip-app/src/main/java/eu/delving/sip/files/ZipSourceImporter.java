@@ -0,0 +1,286 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import eu.delving.XMLToolFactory;
+import eu.delving.sip.base.CancelException;
+import eu.delving.sip.base.ProgressListener;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static eu.delving.sip.files.Storage.POCKET;
+import static eu.delving.sip.files.Storage.POCKETS;
+import static eu.delving.sip.files.Storage.POCKET_ID;
+
+/**
+ * Turn a zip of xml files into a single source of pockets. The entries are parsed and
+ * converted by a pool of threads, while the results are written in the order of the
+ * entries in the zip, so the source is the same however many threads are used.
+ * <p/>
+ * An entry whose root is already a pockets element contributes its pockets, and any
+ * other entry becomes one pocket, identified by its file name.
+ *
+ */
+
+public class ZipSourceImporter {
+    private static final String INPROGRESS_SUFFIX = ".inprogress";
+    private static final byte[] HEADER = String.format("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<%s>\n", POCKETS)
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER = String.format("</%s>\n", POCKETS).getBytes(StandardCharsets.UTF_8);
+    private final File zipFile;
+    private final int threads;
+    private final XMLInputFactory inputFactory = XMLToolFactory.xmlInputFactory();
+    private final XMLOutputFactory outputFactory = XMLToolFactory.xmlOutputFactory();
+    private int pocketCount;
+
+    public ZipSourceImporter(File zipFile, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread needed, not " + threads);
+        }
+        this.zipFile = zipFile;
+        this.threads = threads;
+    }
+
+    /**
+     * Write the source into the given directory as source.xml.zst, replacing any
+     * previous source once it is complete.
+     */
+    public File importInto(File directory, ProgressListener progressListener) throws StorageException {
+        File source = new File(directory, Storage.FileType.SOURCE_ZSTD.getName());
+        File inProgress = new File(directory, source.getName() + INPROGRESS_SUFFIX);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new ZstdOutputStream(new FileOutputStream(inProgress)), 1 << 16)) {
+                importTo(out, progressListener);
+            }
+            for (File previous : StorageHelper.findSourceFiles(directory)) {
+                StorageHelper.delete(previous);
+            }
+            if (source.exists() && !source.delete() || !inProgress.renameTo(source)) {
+                throw new StorageException(String.format("Unable to rename %s to %s", inProgress, source));
+            }
+            return source;
+        } catch (CancelException e) {
+            throw new StorageException("Cancellation", e);
+        } catch (IOException | XMLStreamException e) {
+            throw new StorageException(String.format("Unable to import %s", zipFile.getAbsolutePath()), e);
+        } finally {
+            StorageHelper.delete(inProgress);
+        }
+    }
+
+    public void importTo(OutputStream out, ProgressListener progressListener)
+            throws IOException, XMLStreamException, CancelException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<? extends ZipEntry> entries = zip.stream()
+                    .filter(entry -> !entry.isDirectory() && entry.getName().toLowerCase().endsWith(".xml"))
+                    .collect(Collectors.toList());
+            if (progressListener != null) {
+                progressListener.prepareFor(entries.size());
+            }
+            out.write(HEADER);
+            // a window of entries in flight, written strictly in entry order as they complete
+            Deque<Future<Fragment>> pending = new ArrayDeque<>();
+            int submitted = 0, written = 0;
+            while (written < entries.size()) {
+                while (submitted < entries.size() && pending.size() < threads * 4) {
+                    ZipEntry entry = entries.get(submitted++);
+                    pending.add(executor.submit(() -> convert(zip, entry)));
+                }
+                Fragment fragment = await(pending.removeFirst());
+                fragment.bytes.writeTo(out);
+                pocketCount += fragment.pocketCount;
+                written++;
+                if (progressListener != null) {
+                    progressListener.setProgress(written);
+                }
+            }
+            out.write(FOOTER);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getPocketCount() {
+        return pocketCount;
+    }
+
+    private static Fragment await(Future<Fragment> future) throws IOException, XMLStreamException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) e.getCause();
+            }
+            throw new IOException("Unable to convert entry", e.getCause());
+        }
+    }
+
+    private Fragment convert(ZipFile zip, ZipEntry entry) throws IOException, XMLStreamException {
+        Fragment fragment = new Fragment();
+        try (InputStream entryIn = zip.getInputStream(entry)) {
+            XMLStreamReader in = inputFactory.createXMLStreamReader(entryIn);
+            try {
+                while (in.getEventType() != XMLEvent.START_ELEMENT) {
+                    in.next();
+                }
+                if (POCKETS.equals(in.getLocalName())) {
+                    // pockets already, so copy them with the namespaces declared on the root
+                    Map<String, String> rootNamespaces = declaredNamespaces(in, new LinkedHashMap<>());
+                    while (in.next() != XMLEvent.END_ELEMENT) {
+                        if (in.getEventType() != XMLEvent.START_ELEMENT) {
+                            continue;
+                        }
+                        if (!POCKET.equals(in.getLocalName())) {
+                            throw new XMLStreamException(String.format(
+                                    "Expected %s but found %s in %s", POCKET, in.getLocalName(), entry.getName()));
+                        }
+                        XMLStreamWriter out = outputFactory.createXMLStreamWriter(fragment.bytes, "UTF-8");
+                        copyElement(in, out, rootNamespaces);
+                        fragment.finishPocket(out);
+                    }
+                } else {
+                    XMLStreamWriter out = outputFactory.createXMLStreamWriter(fragment.bytes, "UTF-8");
+                    out.writeStartElement(POCKET);
+                    out.writeAttribute(POCKET_ID, pocketId(entry.getName()));
+                    copyElement(in, out, Map.of());
+                    out.writeEndElement();
+                    fragment.finishPocket(out);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return fragment;
+    }
+
+    private static String pocketId(String entryName) {
+        String name = entryName.substring(entryName.lastIndexOf('/') + 1);
+        return name.substring(0, name.length() - ".xml".length());
+    }
+
+    private static Map<String, String> declaredNamespaces(XMLStreamReader in, Map<String, String> namespaces) {
+        for (int walk = 0; walk < in.getNamespaceCount(); walk++) {
+            String prefix = in.getNamespacePrefix(walk);
+            namespaces.put(prefix == null ? "" : prefix, in.getNamespaceURI(walk));
+        }
+        return namespaces;
+    }
+
+    /**
+     * Copy the element at the reader's position with everything in it, leaving the
+     * reader at its end tag. The inherited namespaces are declared on the copy.
+     */
+    private static void copyElement(XMLStreamReader in, XMLStreamWriter out, Map<String, String> inherited)
+            throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            switch (in.getEventType()) {
+                case XMLEvent.START_ELEMENT:
+                    String prefix = in.getPrefix();
+                    if (prefix == null || prefix.isEmpty()) {
+                        out.writeStartElement(in.getLocalName());
+                    } else {
+                        out.writeStartElement(prefix, in.getLocalName(), in.getNamespaceURI());
+                    }
+                    Map<String, String> namespaces = declaredNamespaces(in,
+                            depth == 0 ? new LinkedHashMap<>(inherited) : new LinkedHashMap<>());
+                    for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                        if (namespace.getKey().isEmpty()) {
+                            out.writeDefaultNamespace(namespace.getValue());
+                        } else {
+                            out.writeNamespace(namespace.getKey(), namespace.getValue());
+                        }
+                    }
+                    for (int walk = 0; walk < in.getAttributeCount(); walk++) {
+                        String attributePrefix = in.getAttributePrefix(walk);
+                        if (attributePrefix == null || attributePrefix.isEmpty()) {
+                            out.writeAttribute(in.getAttributeLocalName(walk), in.getAttributeValue(walk));
+                        } else {
+                            out.writeAttribute(attributePrefix, in.getAttributeNamespace(walk),
+                                    in.getAttributeLocalName(walk), in.getAttributeValue(walk));
+                        }
+                    }
+                    depth++;
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    out.writeEndElement();
+                    depth--;
+                    break;
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.SPACE:
+                    out.writeCharacters(in.getTextCharacters(), in.getTextStart(), in.getTextLength());
+                    break;
+                case XMLEvent.CDATA:
+                    out.writeCData(in.getText());
+                    break;
+                case XMLEvent.COMMENT:
+                    out.writeComment(in.getText());
+                    break;
+            }
+            if (depth == 0) {
+                return;
+            }
+            in.next();
+        }
+    }
+
+    private static class Fragment {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int pocketCount;
+
+        void finishPocket(XMLStreamWriter out) throws XMLStreamException {
+            out.flush();
+            out.close();
+            bytes.write('\n');
+            pocketCount++;
+        }
+    }
+}
@@ -209,9 +209,9 @@ public class InputFrame extends FrameBase {
             for (Map.Entry<String, String> entry : node.attributes().entrySet()) {
                 children.add(new GroovyTreeNode(this, entry.getKey(), entry.getValue()));
             }
-            if (!node.children.isEmpty()) {
+            if (!node.getChildren().isEmpty()) {
                 string = node.getNodeName();
-                toolTip = String.format("Size: %d", node.children.size());
+                toolTip = String.format("Size: %d", node.getChildren().size());
             }
             if(node.text != null) {
                 String truncated = node.text;
@@ -227,8 +227,8 @@ public class InputFrame extends FrameBase {
                     toolTip = truncated;
                 }
             }
-            if (!node.children.isEmpty()) {
-                for (Object sub : node.children) {
+            if (!node.getChildren().isEmpty()) {
+                for (Object sub : node.getChildren()) {
                     GroovyNode subnode = (GroovyNode) sub;
                     children.add(new GroovyTreeNode(this, subnode));
                 }
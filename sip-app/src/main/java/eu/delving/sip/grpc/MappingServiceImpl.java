@@ -29,11 +29,10 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Node;
 
 import eu.delving.groovy.BulkMappingRunner;
+import eu.delving.groovy.EngineHolder;
 import eu.delving.groovy.GroovyCodeResource;
-import eu.delving.groovy.MappingRunner;
 import eu.delving.groovy.MetadataRecord;
 import eu.delving.groovy.XmlSerializer;
 import eu.delving.metadata.CodeGenerator;
@@ -146,13 +145,16 @@ public class MappingServiceImpl extends MappingServiceGrpc.MappingServiceImplBas
 
             // System.out.printf("mapping code: \n %s", code);
 
-            MappingRunner mappingRunner = new BulkMappingRunner(recMapping, code);
+            // a runner per request maps a single record, so it keeps no script on the pooled thread,
+            // and its traced code is not worth a place among the compiled classes of bulk runs
+            BulkMappingRunner mappingRunner = new BulkMappingRunner(recMapping, code, null, false);
 
             logger.info("Running mapping for record with local ID: {}; with code:\n {}", request.getLocalRecordId(),
                     code);
+            logger.info("{}", EngineHolder.getCompiledMappings());
 
-            // Run the mapping
-            Node mappedNode = mappingRunner.runMapping(record);
+            // Run the mapping, straight to XML since no DOM is needed
+            String resultXml = mappingRunner.runMappingToXml(record, serializer);
 
             // Handle validation
             List<String> validationMessages = new ArrayList<>();
@@ -160,9 +162,6 @@ public class MappingServiceImpl extends MappingServiceGrpc.MappingServiceImplBas
 
             // TODO: implement validation schema handling
 
-            // Convert result to string
-            String resultXml = serializer.toXml(mappedNode, true);
-
             // Send response
             MappingResult result = MappingResult.newBuilder()
                     .setMappedXml(resultXml)
@@ -215,7 +214,12 @@ public class MappingServiceImpl extends MappingServiceGrpc.MappingServiceImplBas
             GrpcProgressTracker progressTracker = new GrpcProgressTracker(responseObserver);
 
             // Start the mapping process
-            sipGrpc.startMappingGrpc(sipDir, progressTracker);
+            if (request.hasShard()) {
+                sipGrpc.startMappingGrpc(sipDir, request.getShard().getIndex(), request.getShard().getCount(),
+                        progressTracker);
+            } else {
+                sipGrpc.startMappingGrpc(sipDir, progressTracker);
+            }
 
             // Complete the stream
             responseObserver.onCompleted();
@@ -33,12 +33,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.delving.groovy.GroovyCodeResource;
+import eu.delving.groovy.MappingClassCache;
 import eu.delving.metadata.RecDef;
 import eu.delving.metadata.RecDefTree;
 import eu.delving.metadata.RecMapping;
 import eu.delving.sip.base.ProgressListener;
 import eu.delving.sip.cli.SIPFilesFinder.SIPFiles;
 import eu.delving.sip.files.DataSet;
+import eu.delving.sip.files.HomeDirectory;
 import eu.delving.sip.files.StorageException;
 import eu.delving.sip.model.SipModel;
 import eu.delving.sip.xml.FileProcessor;
@@ -46,7 +48,8 @@ import io.grpc.stub.StreamObserver;
 
 public class SIPGRPC {
     private static final Logger logger = LoggerFactory.getLogger(SIPGRPC.class);
-    private final GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader());
+    private final GroovyCodeResource groovyCodeResource = new GroovyCodeResource(getClass().getClassLoader(),
+            new MappingClassCache(HomeDirectory.CLASSES_DIR));
 
     public static void main(String[] args) throws IOException, InterruptedException {
         int port = 50051; // Default gRPC port
@@ -65,10 +68,16 @@ public class SIPGRPC {
     // New method for gRPC usage
     public void startMappingGrpc(Path sipDir, StreamObserver<MappingProgress> responseObserver)
             throws IOException, StorageException {
-        processSourceXML(sipDir, new GrpcProgressTracker(responseObserver));
+        startMappingGrpc(sipDir, 0, 1, responseObserver);
     }
 
-    private void processSourceXML(Path sipDir, ProgressListener progressListener) throws IOException, StorageException {
+    public void startMappingGrpc(Path sipDir, int shardIndex, int shardCount,
+            StreamObserver<MappingProgress> responseObserver) throws IOException, StorageException {
+        processSourceXML(sipDir, shardIndex, shardCount, new GrpcProgressTracker(responseObserver));
+    }
+
+    private void processSourceXML(Path sipDir, int shardIndex, int shardCount, ProgressListener progressListener)
+            throws IOException, StorageException {
         long startTime = System.currentTimeMillis();
 
         // Use SIPFilesFinder to discover required files
@@ -104,6 +113,7 @@ public class SIPGRPC {
                 RDFFormat.RDFXML);
 
         fileProcessor.setProgressListener(progressListener);
+        fileProcessor.setShard(shardIndex, shardCount);
 
         // Record initialization time
         long initializationTime = System.currentTimeMillis() - startTime;
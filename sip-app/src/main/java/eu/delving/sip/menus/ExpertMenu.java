@@ -41,6 +41,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 
 import static eu.delving.sip.files.Storage.SHACL_VALIDATION;
+import static eu.delving.sip.files.Storage.SOURCE_CACHE_ENABLED;
 import static eu.delving.sip.files.Storage.SOURCE_INCLUDED;
 import static eu.delving.sip.files.Storage.XSD_VALIDATION;
 
@@ -63,6 +64,7 @@ public class ExpertMenu extends JMenu {
         this.allFrames = allFrames;
         add(new ToggleXSDValidation());
         add(new ToggleSHACLValidation());
+        add(new ToggleSourceCache());
         add(new SourceIncludedAction());
         add(new MaxUniqueValueLengthAction());
         add(new ReloadMappingAction());
@@ -210,6 +212,23 @@ public class ExpertMenu extends JMenu {
         }
     }
 
+    private class ToggleSourceCache extends JCheckBoxMenuItem implements ItemListener {
+        public ToggleSourceCache() {
+            super("Toggle Uncompressed Source Cache");
+            boolean state = sipModel.getPreferences().getProperty(SOURCE_CACHE_ENABLED, "false").contentEquals("true");
+            setState(state);
+            addItemListener(this);
+        }
+
+        @Override
+        public void itemStateChanged(ItemEvent e) {
+            int state = e.getStateChange();
+            boolean selected = state == ItemEvent.SELECTED;
+            sipModel.getPreferences().setProperty(SOURCE_CACHE_ENABLED, String.valueOf(selected));
+            sipModel.saveProperties();
+        }
+    }
+
     private class ShowMemory extends AbstractAction {
         public ShowMemory() {
             super("Memory Capacity");
@@ -259,6 +259,7 @@ public class MappingCompileModel {
         public void recMappingSet(MappingModel mappingModel) {
             recMapping = mappingModel.getRecMapping();
             groovyCodeResource.resetClassLoader();
+            groovyCodeResource.clearMappingScripts();
             setNodeMapping(null);
             triggerCompile();
         }
@@ -329,7 +330,6 @@ public class MappingCompileModel {
 
         @Override
         public void run() {
-            groovyCodeResource.clearMappingScripts();
             if (metadataRecord == null)
                 return;
             compiling = true;
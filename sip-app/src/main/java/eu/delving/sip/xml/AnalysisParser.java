@@ -18,8 +18,6 @@
 package eu.delving.sip.xml;
 
 import eu.delving.XMLToolFactory;
-import eu.delving.metadata.Path;
-import eu.delving.metadata.Tag;
 import eu.delving.sip.base.CancelException;
 import eu.delving.sip.base.ProgressListener;
 import eu.delving.sip.base.Work;
@@ -29,7 +27,6 @@ import eu.delving.stats.Stats;
 import org.apache.commons.io.IOUtils;
 import org.codehaus.stax2.XMLStreamReader2;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.events.XMLEvent;
 import java.io.InputStream;
@@ -41,7 +38,8 @@ import java.io.InputStream;
  */
 public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
     public static final int ELEMENT_STEP = 10000;
-    private Stats stats = new Stats();
+    private final int maxUniqueValueLength;
+    private StatsCollector collector;
     private Listener listener;
     private DataSet dataSet;
     private DataSetModel dataSetModel;
@@ -58,7 +56,7 @@ public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
         this.dataSet = dataSet;
         this.dataSetModel = dataSetModel;
         this.listener = listener;
-        stats.maxUniqueValueLength = maxUniqueValueLength;
+        this.maxUniqueValueLength = maxUniqueValueLength;
     }
 
     @Override
@@ -81,7 +79,6 @@ public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
     public void run() {
         try {
             XMLInputFactory xmlif = XMLToolFactory.xmlInputFactory();
-            Path path = Path.create();
             InputStream inputStream = null;
             if (dataSetModel != null && dataSetModel.isEmpty()) return;
             try {
@@ -94,10 +91,8 @@ public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
                     }
                 }
                 inputStream = dataSet.openSourceInputStream();
-                stats.freshStats();
-                stats.name = dataSet.getDataSetFacts().get("name");
+                collector = new StatsCollector(dataSet.getDataSetFacts().get("name"), maxUniqueValueLength);
                 XMLStreamReader2 input = (XMLStreamReader2) xmlif.createXMLStreamReader(getClass().getName(), inputStream);
-                StringBuilder text = new StringBuilder();
                 int count = 0;
                 while (true) {
                     switch (input.getEventType()) {
@@ -105,32 +100,15 @@ public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
                             if (++count % ELEMENT_STEP == 0) {
                                 if (listener != null) progressListener.setProgress(count);
                             }
-                            for (int walk = 0; walk < input.getNamespaceCount(); walk++) {
-                                stats.recordNamespace(input.getNamespacePrefix(walk), input.getNamespaceURI(walk));
-                            }
-                            String chunk = text.toString().trim();
-                            if (!chunk.isEmpty()) {
-                                stats.recordValue(path, chunk);
-                            }
-                            text.setLength(0);
-                            path = path.child(Tag.element(input.getName()));
-                            if (input.getAttributeCount() > 0) {
-                                for (int walk = 0; walk < input.getAttributeCount(); walk++) {
-                                    QName attributeName = input.getAttributeName(walk);
-                                    Path withAttr = path.child(Tag.attribute(attributeName));
-                                    stats.recordValue(withAttr, input.getAttributeValue(walk));
-                                }
-                            }
+                            collector.startElement(input);
                             break;
                         case XMLEvent.CHARACTERS:
                         case XMLEvent.CDATA:
-                            text.append(input.getText());
+                            collector.characters(input.getText());
                             break;
                         case XMLEvent.END_ELEMENT:
                             // todo: stats.recordRecordEnd()
-                            stats.recordValue(path, text.toString().trim());
-                            text.setLength(0);
-                            path = path.parent();
+                            collector.endElement();
                             break;
                     }
                     if (!input.hasNext()) break;
@@ -140,8 +118,7 @@ public class AnalysisParser implements Work.LongTermWork, Work.DataSetWork {
             finally {
                 IOUtils.closeQuietly(inputStream);
             }
-            stats.finish();
-            listener.success(stats);
+            listener.success(collector.finish());
         }
         catch (CancelException e) {
             listener.failure("Cancellation", e);
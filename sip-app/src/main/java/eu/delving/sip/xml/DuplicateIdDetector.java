@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remember the record number at which every record id was first seen, so that
+ * duplicates can be reported against it. Small datasets are kept on the heap, but
+ * beyond a threshold the ids move to a temporary MapDB file, like Stats.Uniqueness,
+ * so that tens of millions of records do not exhaust the heap.
+ *
+ */
+
+public class DuplicateIdDetector {
+    private static final int HOLD_THRESHOLD = 100000;
+    private final int holdThreshold;
+    private Map<String, Integer> firstSeen;
+    private DB db;
+    private int duplicateCount;
+
+    public DuplicateIdDetector() {
+        this(HOLD_THRESHOLD);
+    }
+
+    DuplicateIdDetector(int holdThreshold) {
+        this.holdThreshold = holdThreshold;
+        this.firstSeen = new HashMap<>(holdThreshold * 3 / 2);
+    }
+
+    /**
+     * @return -1 if the id is new, otherwise the number of the record that had it first
+     */
+    public int check(String id, int recordNumber) {
+        Integer first = firstSeen.putIfAbsent(id, recordNumber);
+        if (first != null) {
+            duplicateCount++;
+            return first;
+        }
+        if (db == null && firstSeen.size() > holdThreshold) {
+            db = DBMaker.newTempFileDB().make();
+            Map<String, Integer> dbMap = db.getHashMap("firstSeen");
+            dbMap.putAll(firstSeen);
+            firstSeen = dbMap;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true once the ids have moved to MapDB
+     */
+    boolean isOnDisk() {
+        return db != null;
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public void close() {
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        firstSeen = new HashMap<>();
+    }
+}
@@ -24,7 +24,9 @@ import eu.delving.sip.base.ProgressListener;
 import eu.delving.sip.base.Work;
 import eu.delving.sip.cli.CLIProgressListener;
 import eu.delving.sip.files.DataSet;
+import eu.delving.sip.files.PocketStore;
 import eu.delving.sip.files.ReportWriter;
+import eu.delving.sip.files.Storage;
 import eu.delving.sip.files.StorageException;
 import eu.delving.sip.model.Feedback;
 import io.sentry.*;
@@ -76,6 +78,17 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
     private final Object lock = new Object();
     private RDFFormat rdfFormat;
     private final Date time;
+    private boolean gatherStats;
+    private int maxUniqueValueLength;
+    private StatsCollector statsCollector;
+    private int shardIndex;
+    private int shardCount = 1;
+    private boolean dropDuplicates;
+    private long maxRecordSize;
+    private int maxRecordElements, maxRecordDepth;
+    private double queueHeapFraction = 0.25;
+    private boolean staticNavigation;
+    private boolean precompilePatterns;
 
     public Feedback getFeedback() {
         return feedback;
@@ -129,6 +142,92 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
         this.rdfFormat = rdfFormat;
     }
 
+    /**
+     * Gather source statistics from the same parse that feeds the mapping engines,
+     * and write them when processing completes, so no separate analysis pass is needed.
+     */
+    public void setGatherStats(int maxUniqueValueLength) {
+        this.gatherStats = true;
+        this.maxUniqueValueLength = maxUniqueValueLength;
+    }
+
+    /**
+     * Process only the records whose identifier hashes into the given shard, writing
+     * part files which can later be merged with those of the other shards.
+     */
+    public void setShard(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException(String.format("Invalid shard %d/%d", shardIndex, shardCount));
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Records whose id was already seen are always reported, and with this they are
+     * also left out of the processed output.
+     */
+    public void setDropDuplicates(boolean dropDuplicates) {
+        this.dropDuplicates = dropDuplicates;
+    }
+
+    /**
+     * Records beyond any of these limits are skipped by the parser and reported as
+     * rejected, so one huge record cannot exhaust the heap. Zero means no limit.
+     */
+    public void setRecordLimits(long maxSize, int maxElements, int maxDepth) {
+        this.maxRecordSize = maxSize;
+        this.maxRecordElements = maxElements;
+        this.maxRecordDepth = maxDepth;
+    }
+
+    /**
+     * Bound the records parsed ahead of the engines by their estimated heap size, as a
+     * fraction of the maximum heap, rather than only by their number.
+     */
+    public void setQueueHeapFraction(double queueHeapFraction) {
+        if (queueHeapFraction <= 0 || queueHeapFraction >= 1) {
+            throw new IllegalArgumentException("Queue heap fraction must be between 0 and 1: " + queueHeapFraction);
+        }
+        this.queueHeapFraction = queueHeapFraction;
+    }
+
+    /**
+     * Generate the mapping code with typed navigation of the input wherever the node
+     * mappings allow it, see CodeGenerator.withStaticNavigation.
+     */
+    public void setStaticNavigation(boolean staticNavigation) {
+        this.staticNavigation = staticNavigation;
+    }
+
+    /**
+     * Compile the literal regular expressions of the mapping code before the engines start,
+     * see PatternCache.precompileLiterals.
+     */
+    public void setPrecompilePatterns(boolean precompilePatterns) {
+        this.precompilePatterns = precompilePatterns;
+    }
+
+    private String outputPrefix() {
+        if (shardCount == 1) {
+            return getPrefix();
+        }
+        return String.format(Storage.SHARD_PART, getPrefix(), shardIndex);
+    }
+
+    private boolean inShard(MetadataRecord record) {
+        return inShard(record.getId(), record.getRecordNumber());
+    }
+
+    // rejected records are reported by the shard that would have processed them
+    private boolean inShard(String id, int recordNumber) {
+        if (shardCount == 1) {
+            return true;
+        }
+        int hash = id != null ? id.hashCode() * 0x9E3779B9 : recordNumber;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount) == shardIndex;
+    }
+
     private void info(String message) {
         if (feedback != null) {
             feedback.info(message);
@@ -214,11 +313,31 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
     @Override
     public void run() {
         groovyCodeResource.resetClassLoader();
+        PatternCache.Statistics patternsAtStart = PatternCache.snapshot();
+        CompiledMappingCache.Statistics mappingsAtStart = EngineHolder.getCompiledMappings().snapshot();
         OutputStream outputStream = null;
         MetadataParser parser = null;
+        PocketStore.Writer pocketWriter = null;
         try {
-            parser = new MetadataParser(getDataSet().openSourceInputStream(), -1);
+            boolean plainPass = !gatherStats && maxRecordSize == 0 && maxRecordElements == 0 && maxRecordDepth == 0;
+            PocketStore.Reader pockets = plainPass ? getDataSet().openPocketStore() : null;
+            if (pockets != null) {
+                info(String.format("Reading %d records from the pocket store", pockets.getRecordCount()));
+                parser = new MetadataParser(pockets);
+            } else {
+                parser = new MetadataParser(getDataSet().openSourceInputStream(), -1);
+                if (plainPass && shardCount == 1) {
+                    // the store must hold every record, so only a pass without rejections writes it,
+                    // and not a shard, since the other shards would write the same file at once
+                    pocketWriter = getDataSet().createPocketStore();
+                    parser.setPocketWriter(pocketWriter);
+                }
+            }
             parser.setProgressListener(progressListener);
+            if (gatherStats) {
+                statsCollector = new StatsCollector(dataSet.getDataSetFacts().get("name"), maxUniqueValueLength);
+                parser.setStatsCollector(statsCollector);
+            }
 
             Graph shape = null;
             if (enableSHACLValidation) {
@@ -226,19 +345,37 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
             }
 
             File outputDir = createEmptyOutputDir();
-            outputStream = getDataSet().openProcessedOutputStream(getPrefix(), time);
+            outputStream = getDataSet().openProcessedOutputStream(outputPrefix(), time);
 
-            ReportWriter reportWriter = getDataSet().openReportWriter(getPrefix(), time);
+            ReportWriter reportWriter = getDataSet().openReportWriter(outputPrefix(), time);
+            parser.setRecordLimits(maxRecordSize, maxRecordElements, maxRecordDepth,
+                    (id, recordNumber, size, reason) -> {
+                        if (!inShard(id, recordNumber)) {
+                            return;
+                        }
+                        try {
+                            synchronized (lock) {
+                                reportWriter.rejected(id, recordNumber,
+                                        String.format("Record rejected with %d characters: %s", size, reason));
+                            }
+                        } catch (IOException e) {
+                            termination.dueToException(e);
+                        }
+                    });
             Consumer consumer = new Consumer(reportWriter);
             int engineCount = (int) Math.round(Runtime.getRuntime().availableProcessors() * 1.1);
             info(String.format("Processing with %d engines", engineCount));
 
-            String code = new CodeGenerator(recMapping).withEditPath(null).withTrace(false).toRecordMappingCode();
-            MappingRunner MappingRunner = new BulkMappingRunner(recMapping, code);
+            String code = new CodeGenerator(recMapping).withEditPath(null).withTrace(false)
+                    .withStaticNavigation(staticNavigation).toRecordMappingCode();
+            MappingRunner MappingRunner = new BulkMappingRunner(recMapping, code, groovyCodeResource.getClassCache());
+            if (precompilePatterns) {
+                info(String.format("Precompiled %d patterns", PatternCache.precompileLiterals(code)));
+            }
             List<AssertionTest> assertionTests = AssertionTest.listFrom(recMapping.getRecDefTree().getRecDef(),
                     groovyCodeResource);
 
-            MetadataParserRunner metadataParserRunner = new MetadataParserRunner(parser);
+            MetadataParserRunner metadataParserRunner = new MetadataParserRunner(parser, reportWriter);
             metadataParserRunner.start();
             for (int walk = 0; walk < engineCount; walk++) {
                 Validator validator = null;
@@ -275,9 +412,9 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                     outputStream.close();
                     try {
                         if (termination.isIncomplete()) {
-                            getDataSet().cancelProcessedOutput(getPrefix(), time);
+                            getDataSet().cancelProcessedOutput(outputPrefix(), time);
                         } else {
-                            getDataSet().finishProcessedOutput(getPrefix(), time);
+                            getDataSet().finishProcessedOutput(outputPrefix(), time);
                         }
                     } catch (StorageException e) {
                         feedback.alert("Error finishing processed output", e);
@@ -285,6 +422,23 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                 }
                 if (parser != null) {
                     parser.close();
+                    if (parser.getValueTable().getLookups() > 0) {
+                        info("Parser " + parser.getValueTable());
+                    }
+                }
+                PatternCache.Statistics patterns = PatternCache.snapshot().since(patternsAtStart);
+                if (!patterns.isEmpty()) {
+                    info(patterns.toString());
+                }
+                CompiledMappingCache.Statistics mappings = EngineHolder.getCompiledMappings().snapshot().since(mappingsAtStart);
+                if (!mappings.isEmpty()) {
+                    info(mappings.toString());
+                }
+                if (pocketWriter != null) {
+                    if (!termination.isIncomplete()) {
+                        pocketWriter.finish();
+                    }
+                    pocketWriter.close();
                 }
             } catch (IOException e) {
                 feedback.alert("Error closing resources", e);
@@ -359,19 +513,43 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
         }
     }
 
+    private static class QueuedRecord {
+        final MetadataRecord record;
+        final long size;
+
+        QueuedRecord(MetadataRecord record, long size) {
+            this.record = record;
+            this.size = size;
+        }
+    }
+
     private class MetadataParserRunner implements Runnable {
+        private static final int MAX_QUEUED_RECORDS = 1000;
 
-        final BlockingQueue<MetadataRecord> outputQueue = new LinkedBlockingDeque<>();
+        final BlockingQueue<QueuedRecord> outputQueue = new LinkedBlockingDeque<>();
+        final QueueBudget budget = new QueueBudget((long) (Runtime.getRuntime().maxMemory() * queueHeapFraction), MAX_QUEUED_RECORDS);
         final Thread thread = new Thread(this);
         final MetadataParser metadataParser;
+        final ReportWriter reportWriter;
+        final DuplicateIdDetector duplicateIdDetector = new DuplicateIdDetector();
 
-        private MetadataParserRunner(MetadataParser metadataParser) {
+        private MetadataParserRunner(MetadataParser metadataParser, ReportWriter reportWriter) {
             this.metadataParser = metadataParser;
+            this.reportWriter = reportWriter;
             thread.setName(getClass().getName());
         }
 
         public MetadataRecord nextRecord() throws InterruptedException {
-            return outputQueue.take();
+            QueuedRecord queued = outputQueue.take();
+            if (!queued.record.isPoison()) {
+                budget.release(queued.size);
+            }
+            return queued.record;
+        }
+
+        private void enqueue(MetadataRecord record, long size) throws InterruptedException {
+            budget.admit(size, termination::isIncomplete);
+            outputQueue.add(new QueuedRecord(record, size));
         }
 
         @Override
@@ -382,10 +560,11 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                     try {
                         if (!((record = metadataParser.nextRecord()) != null))
                             break;
-                        outputQueue.add(record);
-                        while (outputQueue.size() > 1000) {
-                            Thread.sleep(1000);
-                        }
+                        if (!inShard(record))
+                            continue;
+                        if (isDuplicate(record) && dropDuplicates)
+                            continue;
+                        enqueue(record, metadataParser.getRecordSizeEstimate());
                     } catch (CancelException e) {
                         termination.dueToCancellation();
                         break;
@@ -395,12 +574,30 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                     }
                 }
             } finally {
+                if (duplicateIdDetector.getDuplicateCount() > 0) {
+                    info(String.format("Found %d records with duplicate ids", duplicateIdDetector.getDuplicateCount()));
+                }
+                duplicateIdDetector.close();
                 for (int i = 0; i < 100; i++) {
-                    outputQueue.add(MetadataRecord.poisonPill());
+                    outputQueue.add(new QueuedRecord(MetadataRecord.poisonPill(), 0));
                 }
             }
         }
 
+        private boolean isDuplicate(MetadataRecord record) throws IOException {
+            if (record.getId() == null) {
+                return false;
+            }
+            int firstRecordNumber = duplicateIdDetector.check(record.getId(), record.getRecordNumber());
+            if (firstRecordNumber < 0) {
+                return false;
+            }
+            synchronized (lock) {
+                reportWriter.duplicate(record, firstRecordNumber, dropDuplicates);
+            }
+            return true;
+        }
+
         public void start() {
             thread.start();
         }
@@ -491,7 +688,7 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                 if (reportWriter != null) {
                     reportWriter.abort();
                     try {
-                        getDataSet().cancelReportWriter(getPrefix(), time);
+                        getDataSet().cancelReportWriter(outputPrefix(), time);
                     } catch (StorageException e) {
                         feedback.alert("Error cancelling report", e);
                     }
@@ -505,11 +702,18 @@ public class FileProcessor implements Work.DataSetPrefixWork, Work.LongTermWork
                 if (reportWriter != null) {
                     reportWriter.finish(recordCount, processedCount);
                     try {
-                        getDataSet().finishReportWriter(getPrefix(), time);
+                        getDataSet().finishReportWriter(outputPrefix(), time);
                     } catch (StorageException e) {
                         feedback.alert("Error finishing report", e);
                     }
                 }
+                if (statsCollector != null) {
+                    try {
+                        getDataSet().setStats(statsCollector.finish());
+                    } catch (StorageException e) {
+                        feedback.alert("Error writing source statistics", e);
+                    }
+                }
                 if (transaction != null) {
                     transaction.setStatus(SpanStatus.OK);
                     transaction.setMeasurement("records", recordCount);
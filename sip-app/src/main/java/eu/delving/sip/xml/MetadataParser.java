@@ -22,21 +22,21 @@ import eu.delving.groovy.GroovyNode;
 import eu.delving.groovy.MetadataRecord;
 import eu.delving.groovy.MetadataRecordFactory;
 import eu.delving.groovy.Utils;
-import eu.delving.metadata.Path;
 import eu.delving.metadata.StringUtil;
 import eu.delving.metadata.Tag;
 import eu.delving.sip.base.CancelException;
 import eu.delving.sip.base.ProgressListener;
+import eu.delving.sip.files.PocketStore;
 import eu.delving.sip.files.Storage;
-import org.codehaus.stax2.ri.evt.Stax2EventAllocatorImpl;
+import org.codehaus.stax2.LocationInfo;
+import org.codehaus.stax2.XMLStreamReader2;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import javax.xml.stream.events.XMLEvent;
-import javax.xml.stream.util.XMLEventAllocator;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -51,16 +51,39 @@ import static eu.delving.sip.files.Storage.RECORD_CONTAINER;
  */
 
 public class MetadataParser {
+    private static final Tag[] RECORD_CONTAINER_TAGS = new Tag[RECORD_CONTAINER.size()];
+
+    static {
+        for (int level = 0; level < RECORD_CONTAINER_TAGS.length; level++) {
+            RECORD_CONTAINER_TAGS[level] = RECORD_CONTAINER.getTag(level);
+        }
+    }
+
+    private static final int NODE_OVERHEAD = 200;
     private InputStream inputStream;
     private XMLStreamReader input;
     private int recordIndex, recordCount;
     private Map<String, String> namespaces = new TreeMap<String, String>();
-    private Path path = Path.create();
+    private final NameTable names = new NameTable();
+    private final ValueTable values = new ValueTable();
+    // element depth, and how many of the enclosing elements match RECORD_CONTAINER
+    private int depth, containerDepth;
     private MetadataRecordFactory factory = new MetadataRecordFactory(namespaces);
     private ProgressListener progressListener;
     private boolean isSourceExhausted;
-    private final boolean isAttachingSource;
-    private final XMLEventAllocator eventAllocator;
+    private final RecordingReader recorder;
+    private long recordStart, recordEnd;
+    private StatsCollector statsCollector;
+    private long maxRecordSize;
+    private int maxRecordElements, maxRecordDepth;
+    private RejectionListener rejectionListener;
+    private long recordSizeEstimate;
+    private final PocketStore.Reader pockets;
+    private PocketStore.Writer pocketWriter;
+
+    public interface RejectionListener {
+        void rejected(String id, int recordNumber, long size, String reason);
+    }
 
     public MetadataParser(InputStream inputStream, int recordCount) throws XMLStreamException {
         this(inputStream, recordCount, false);
@@ -68,13 +91,58 @@ public class MetadataParser {
 
     public MetadataParser(InputStream inputStream, int recordCount, boolean attachSource) throws XMLStreamException {
         this.inputStream = inputStream;
+        this.pockets = null;
         XMLInputFactory inputFactory = XMLToolFactory.xmlInputFactory();
-        this.input = inputFactory.createXMLStreamReader(inputStream, "UTF-8");
+        if (attachSource) {
+            // parse from a recorded reader so each record's text can be sliced out by character offset
+            this.recorder = new RecordingReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            this.input = inputFactory.createXMLStreamReader(recorder);
+            if (!(input instanceof XMLStreamReader2)) {
+                throw new XMLStreamException("Attaching source needs a parser reporting character offsets");
+            }
+        } else {
+            this.recorder = null;
+            this.input = inputFactory.createXMLStreamReader(inputStream, "UTF-8");
+        }
+    }
+
+    /**
+     * Read the records from a binary pocket store instead of parsing XML. The trees come
+     * back exactly as they were stored, so statistics and record limits do not apply.
+     */
+    public MetadataParser(PocketStore.Reader pockets) {
+        this.pockets = pockets;
+        this.recorder = null;
+        this.recordCount = pockets.getRecordCount();
+    }
+
+    /**
+     * Append every record parsed to the given pocket store as well, so that later passes
+     * can read the store instead.
+     */
+    public void setPocketWriter(PocketStore.Writer pocketWriter) {
+        this.pocketWriter = pocketWriter;
+    }
+
+    /**
+     * Feed every parse event to the given collector as well, so that source statistics
+     * are gathered in the same pass that produces the records.
+     */
+    public void setStatsCollector(StatsCollector statsCollector) {
+        this.statsCollector = statsCollector;
+    }
 
-        this.isAttachingSource = attachSource;
-        // getEventAllocator() returns null: this.eventAllocator =
-        // XMLToolFactory.xmlInputFactory().getEventAllocator();
-        this.eventAllocator = attachSource ? new Stax2EventAllocatorImpl() : null;
+    /**
+     * Guard against pathological records. A record whose text and attribute values exceed
+     * maxSize characters, or which has more than maxElements elements or nests deeper
+     * than maxDepth, is not built but skipped up to its closing element and handed to
+     * the rejection listener instead. Zero means no limit.
+     */
+    public void setRecordLimits(long maxSize, int maxElements, int maxDepth, RejectionListener rejectionListener) {
+        this.maxRecordSize = maxSize;
+        this.maxRecordElements = maxElements;
+        this.maxRecordDepth = maxDepth;
+        this.rejectionListener = rejectionListener;
     }
 
     public void setProgressListener(ProgressListener progressListener) {
@@ -82,41 +150,71 @@ public class MetadataParser {
         progressListener.prepareFor(recordCount);
     }
 
+    /**
+     * @return the character offset in the source where the record last returned starts,
+     * only tracked when attaching source
+     */
+    public long getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * @return the character offset in the source just past the end of the record last returned
+     */
+    public long getRecordEnd() {
+        return recordEnd;
+    }
+
+    /**
+     * A rough estimate of the heap taken by the tree of the record last returned,
+     * based on its characters and the overhead of a GroovyNode per element.
+     */
+    public long getRecordSizeEstimate() {
+        return recordSizeEstimate;
+    }
+
+    /**
+     * @return the table sharing repeated short values between records, which tells how
+     * many values were shared
+     */
+    public ValueTable getValueTable() {
+        return values;
+    }
+
     @SuppressWarnings("unchecked")
     public MetadataRecord nextRecord() throws XMLStreamException, IOException, CancelException {
         if (isSourceExhausted) {
             return null;
         }
+        if (pockets != null) {
+            return nextPocket();
+        }
         MetadataRecord metadataRecord = null;
         GroovyNode node = null;
         StringBuilder value = new StringBuilder();
-
-        StringWriter sourceWriter = null;
-        XMLEventWriter eventWriter = null;
-        boolean skipInitialWhitespace = true;
-        if (isAttachingSource) {
-            sourceWriter = new StringWriter(1024);
-            eventWriter = XMLToolFactory.xmlOutputFactory().createXMLEventWriter(sourceWriter);
-        }
+        String recordId = null;
+        long recordSize = 0;
+        int recordElements = 0, recordDepth = 0;
+        String rejection = null;
 
         while (metadataRecord == null) {
-            if (isAttachingSource && path.parent() != null) {
-                if (!(skipInitialWhitespace && input.getEventType() == XMLEvent.CHARACTERS
-                        && input.getText().trim().length() == 0)) {
-                    if (!(input.getEventType() == XMLStreamConstants.END_ELEMENT && skipInitialWhitespace)) {
-                        eventWriter.add(eventAllocator.allocate(input));
-                        skipInitialWhitespace = false;
-                    }
-                }
+            if (recorder != null && rejection != null) {
+                // nothing of a rejected record is needed
+                recorder.discardBefore(locationInfo().getStartingCharOffset());
             }
-
             switch (input.getEventType()) {
                 case XMLEvent.START_DOCUMENT:
                     break;
                 case XMLEvent.START_ELEMENT:
-                    path = path.child(Tag.element(input.getName()));
-                    boolean recordContainer = path.equals(RECORD_CONTAINER);
-                    if (node == null && recordContainer) {
+                    if (statsCollector != null)
+                        statsCollector.startElement(input);
+                    depth++;
+                    if (containerDepth == depth - 1 && depth <= RECORD_CONTAINER_TAGS.length
+                            && isContainerTag(RECORD_CONTAINER_TAGS[depth - 1])) {
+                        containerDepth = depth;
+                    }
+                    boolean isRecordContainer = atRecordContainer();
+                    if (node == null && rejection == null && isRecordContainer) {
                         node = new GroovyNode(null, "input");
                         int idIndex = -1;
                         for (int walk = 0; walk < input.getAttributeCount(); walk++) {
@@ -126,53 +224,113 @@ public class MetadataParser {
                         if (idIndex < 0) {
                             throw new IOException("Expected record root to have @id");
                         }
-                        node.attributes().put(Storage.POCKET_ID,
-                                StringUtil.sanitizeId(input.getAttributeValue(idIndex)));
-                    } else if (node != null) {
+                        if (recorder != null) {
+                            recordStart = locationInfo().getStartingCharOffset();
+                            recorder.discardBefore(recordStart);
+                        }
+                        recordId = StringUtil.sanitizeId(input.getAttributeValue(idIndex));
+                        node.attributes().put(Storage.POCKET_ID, recordId);
+                        recordSize = 0;
+                        recordElements = 1;
+                        recordDepth = 0;
+                    } else if (node != null || rejection != null) {
+                        recordElements++;
+                        recordDepth++;
+                        for (int walk = 0; walk < input.getAttributeCount(); walk++) {
+                            recordSize += input.getAttributeValue(walk).length();
+                        }
+                        if (rejection == null) {
+                            rejection = exceededLimit(recordSize, recordElements, recordDepth);
+                            if (rejection != null) {
+                                node = null;
+                                value.setLength(0);
+                                break;
+                            }
+                        }
+                    }
+                    if (node != null && !isRecordContainer) {
                         node = new GroovyNode(node, input.getNamespaceURI(), input.getLocalName(), input.getPrefix());
                         if (!input.getPrefix().isEmpty())
                             namespaces.put(input.getPrefix(), input.getNamespaceURI());
                         if (input.getAttributeCount() > 0) {
                             for (int walk = 0; walk < input.getAttributeCount(); walk++) {
-                                QName qName = input.getAttributeName(walk);
-                                String attrName;
-                                if (qName.getPrefix() == null || qName.getPrefix().isEmpty()) {
-                                    attrName = qName.getLocalPart();
-                                } else {
-                                    attrName = String.format("%s:%s", qName.getPrefix(), qName.getLocalPart());
-                                }
-                                node.attributes().put(attrName, input.getAttributeValue(walk));
+                                String attrName = names.attributeName(
+                                        input.getAttributePrefix(walk), input.getAttributeLocalName(walk));
+                                node.attributes().put(attrName, values.value(input.getAttributeValue(walk)));
                             }
                         }
                         value.setLength(0);
                     }
                     break;
                 case XMLEvent.CHARACTERS:
-                    if (node != null)
+                    if (statsCollector != null)
+                        statsCollector.characters(input.getText());
+                    if (node != null) {
                         value.append(Utils.stripNonPrinting(input.getText()));
+                    }
+                    if (node != null || rejection != null) {
+                        recordSize += input.getTextLength();
+                    }
+                    if (node != null && (rejection = exceededLimit(recordSize, recordElements, recordDepth)) != null) {
+                        node = null;
+                        value.setLength(0);
+                    }
                     break;
                 case XMLEvent.CDATA:
-                    if (node != null)
+                    if (statsCollector != null)
+                        statsCollector.characters(input.getText());
+                    if (node != null) {
                         value.append(String.format("<![CDATA[%s]]>", Utils.stripNonPrinting(input.getText())));
+                    }
+                    if (node != null || rejection != null) {
+                        recordSize += input.getTextLength();
+                    }
+                    if (node != null && (rejection = exceededLimit(recordSize, recordElements, recordDepth)) != null) {
+                        node = null;
+                        value.setLength(0);
+                    }
                     break;
                 case XMLEvent.END_ELEMENT:
-                    if (node != null) {
-                        if (path.equals(RECORD_CONTAINER)) {
+                    if (statsCollector != null)
+                        statsCollector.endElement();
+                    if (rejection != null) {
+                        if (atRecordContainer()) {
+                            if (rejectionListener != null) {
+                                rejectionListener.rejected(recordId, recordIndex, recordSize, rejection);
+                            }
+                            recordIndex++;
+                            if (progressListener != null) {
+                                progressListener.setProgress(recordIndex);
+                            }
+                            rejection = null;
+                        } else {
+                            recordDepth--;
+                        }
+                    } else if (node != null) {
+                        if (atRecordContainer()) {
                             // TODO record count is never used
                             metadataRecord = factory.fromGroovyNode(node, recordIndex++, recordCount);
+                            recordSizeEstimate = 2 * recordSize + NODE_OVERHEAD * recordElements;
+                            if (recorder != null) {
+                                recordEnd = locationInfo().getEndingCharOffset();
+                            }
                             if (progressListener != null) {
                                 progressListener.setProgress(recordIndex);
                             }
                             node = null;
                         } else {
-                            String valueString = value.toString().trim();
+                            String valueString = values.trimmedValue(value, 0, value.length());
                             value.setLength(0);
                             if (!valueString.isEmpty())
                                 node.setNodeValue(valueString);
                             node = node.parent();
+                            recordDepth--;
                         }
                     }
-                    path = path.parent();
+                    if (containerDepth == depth) {
+                        containerDepth--;
+                    }
+                    depth--;
                     break;
                 case XMLEvent.END_DOCUMENT: {
                     isSourceExhausted = true;
@@ -186,20 +344,70 @@ public class MetadataParser {
             input.next();
         }
 
-        if (isAttachingSource && metadataRecord != null) {
-            if (!skipInitialWhitespace) {
-                eventWriter.close();
-            }
-            return MetadataRecord.create(metadataRecord, sourceWriter.toString());
+        if (recorder != null && metadataRecord != null) {
+            return MetadataRecord.create(metadataRecord, recorder.slice(recordStart, recordEnd));
+        }
+        if (pocketWriter != null && metadataRecord != null) {
+            pocketWriter.append(metadataRecord);
         }
 
         return metadataRecord;
     }
 
+    private MetadataRecord nextPocket() throws IOException, CancelException {
+        MetadataRecord metadataRecord = pockets.nextRecord();
+        if (metadataRecord == null) {
+            isSourceExhausted = true;
+            return null;
+        }
+        recordIndex++;
+        recordSizeEstimate = pockets.getRecordSizeEstimate();
+        if (progressListener != null) {
+            progressListener.setProgress(recordIndex);
+        }
+        return metadataRecord;
+    }
+
+    private LocationInfo locationInfo() {
+        return ((XMLStreamReader2) input).getLocationInfo();
+    }
+
+    private boolean atRecordContainer() {
+        return depth == RECORD_CONTAINER_TAGS.length && containerDepth == depth;
+    }
+
+    private boolean isContainerTag(Tag tag) {
+        if (!tag.getLocalName().equals(input.getLocalName())) {
+            return false;
+        }
+        String prefix = input.getPrefix();
+        if (tag.getPrefix() == null) {
+            return prefix == null || prefix.isEmpty();
+        }
+        return tag.getPrefix().equals(prefix);
+    }
+
+    private String exceededLimit(long size, int elements, int depth) {
+        if (maxRecordSize > 0 && size > maxRecordSize) {
+            return String.format("more than %d characters", maxRecordSize);
+        }
+        if (maxRecordElements > 0 && elements > maxRecordElements) {
+            return String.format("more than %d elements", maxRecordElements);
+        }
+        if (maxRecordDepth > 0 && depth > maxRecordDepth) {
+            return String.format("nested deeper than %d", maxRecordDepth);
+        }
+        return null;
+    }
+
     public void close() {
         try {
-            input.close();
-        } catch (XMLStreamException e) {
+            if (pockets != null) {
+                pockets.close();
+            } else {
+                input.close();
+            }
+        } catch (XMLStreamException | IOException e) {
             e.printStackTrace(); // should never happen
         }
     }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import eu.delving.metadata.Path;
+import eu.delving.metadata.Tag;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Hands out one shared Path instance per distinct element or attribute path seen by
+ * a parser, so that paths are built once and their cached strings and hashes reused,
+ * and one shared string per prefixed attribute name. The parser's names come from the
+ * StAX symbol table, so lookups mostly succeed on reference equality.
+ * <p/>
+ * The paths handed out must not be modified, and the table belongs to one parser.
+ *
+ */
+
+public class NameTable {
+    private final Map<Path, Children> children = new IdentityHashMap<>();
+    private final Map<Path, Children> attributes = new IdentityHashMap<>();
+    private final Map<String, Map<String, String>> attributeNames = new HashMap<>();
+
+    public Path child(Path parent, String prefix, String localName) {
+        return lookup(children, false, parent, prefix, localName);
+    }
+
+    public Path attribute(Path parent, String prefix, String localName) {
+        return lookup(attributes, true, parent, prefix, localName);
+    }
+
+    private static Path lookup(Map<Path, Children> table, boolean attribute, Path parent, String prefix, String localName) {
+        if (prefix == null) {
+            prefix = "";
+        }
+        Children known = table.computeIfAbsent(parent, p -> new Children());
+        for (int walk = 0; walk < known.count; walk++) {
+            if (matches(known.localNames[walk], localName) && matches(known.prefixes[walk], prefix)) {
+                return known.paths[walk];
+            }
+        }
+        Tag tag = attribute ? Tag.attribute(prefix, localName) : Tag.element(prefix, localName, null);
+        Path child = parent.child(tag);
+        known.add(prefix, localName, child);
+        return child;
+    }
+
+    public String attributeName(String prefix, String localName) {
+        if (prefix == null || prefix.isEmpty()) {
+            return localName;
+        }
+        return attributeNames
+                .computeIfAbsent(prefix, p -> new HashMap<>())
+                .computeIfAbsent(localName, local -> prefix + ":" + local);
+    }
+
+    private static boolean matches(String known, String name) {
+        return known == name || known.equals(name);
+    }
+
+    private static class Children {
+        String[] prefixes = new String[4];
+        String[] localNames = new String[4];
+        Path[] paths = new Path[4];
+        int count;
+
+        void add(String prefix, String localName, Path path) {
+            if (count == paths.length) {
+                prefixes = Arrays.copyOf(prefixes, count * 2);
+                localNames = Arrays.copyOf(localNames, count * 2);
+                paths = Arrays.copyOf(paths, count * 2);
+            }
+            prefixes[count] = prefix;
+            localNames[count] = localName;
+            paths[count] = path;
+            count++;
+        }
+    }
+}
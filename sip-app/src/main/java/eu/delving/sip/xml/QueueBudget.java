@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The heap budget of the queue between the parser and the mapping engines. A record is
+ * admitted when its estimated size fits in what the queued records leave of the budget
+ * and the queue is below its record limit, but one record is always admitted when nothing
+ * is queued, however big, so that the engines never starve.
+ *
+ */
+
+class QueueBudget {
+    private static final long WAIT_MILLIS = 1000;
+    private final long budget;
+    private final int maxRecords;
+    private long queuedSize;
+    private int queuedRecords;
+
+    QueueBudget(long budget, int maxRecords) {
+        this.budget = budget;
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Wait until a record of the given size may be queued, and charge it. The abandoned
+     * condition is checked at least every second, and when it holds the record is charged
+     * without waiting further.
+     */
+    synchronized void admit(long size, BooleanSupplier abandoned) throws InterruptedException {
+        while (queuedRecords > 0 && !abandoned.getAsBoolean()
+                && (queuedSize + size > budget || queuedRecords >= maxRecords)) {
+            wait(WAIT_MILLIS);
+        }
+        queuedSize += size;
+        queuedRecords++;
+    }
+
+    /**
+     * Give back what an admitted record was charged, once it has left the queue.
+     */
+    synchronized void release(long size) {
+        queuedSize -= size;
+        queuedRecords--;
+        notifyAll();
+    }
+
+    synchronized long getQueuedSize() {
+        return queuedSize;
+    }
+
+    synchronized int getQueuedRecords() {
+        return queuedRecords;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A reader which keeps the characters passing through it, from a given offset on,
+ * so that the original text of a stretch of the document can be sliced out using
+ * the character offsets the XML parser reports.
+ *
+ */
+
+public class RecordingReader extends FilterReader {
+    private char[] buffer = new char[8192];
+    private long bufferStart;
+    private int length;
+
+    public RecordingReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] one = new char[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0];
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int count) throws IOException {
+        int read = in.read(chars, offset, count);
+        if (read > 0) {
+            if (length + read > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + read));
+            }
+            System.arraycopy(chars, offset, buffer, length, read);
+            length += read;
+        }
+        return read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Forget everything before the given offset, which is where the next slice will start.
+     */
+    public void discardBefore(long offset) {
+        int drop = (int) Math.min(Math.max(offset - bufferStart, 0), length);
+        System.arraycopy(buffer, drop, buffer, 0, length - drop);
+        length -= drop;
+        bufferStart += drop;
+    }
+
+    public String slice(long start, long end) {
+        if (start < bufferStart || end > bufferStart + length || start > end) {
+            throw new IllegalArgumentException(String.format(
+                    "Range %d-%d is not recorded, only %d-%d", start, end, bufferStart, bufferStart + length));
+        }
+        return new String(buffer, (int) (start - bufferStart), (int) (end - start));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import eu.delving.metadata.Path;
+import eu.delving.stats.Stats;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Gather source statistics from a stream of parse events. The AnalysisParser drives
+ * this on its own, and the MetadataParser can drive it during processing so that
+ * the source only needs to be read once.
+ *
+ */
+
+public class StatsCollector {
+    private final Stats stats = new Stats();
+    private final StringBuilder text = new StringBuilder();
+    private final NameTable names = new NameTable();
+    private Path path = Path.create();
+
+    public StatsCollector(String name, int maxUniqueValueLength) {
+        stats.maxUniqueValueLength = maxUniqueValueLength;
+        stats.freshStats();
+        stats.name = name;
+    }
+
+    public void startElement(XMLStreamReader input) {
+        for (int walk = 0; walk < input.getNamespaceCount(); walk++) {
+            stats.recordNamespace(input.getNamespacePrefix(walk), input.getNamespaceURI(walk));
+        }
+        String chunk = text.toString().trim();
+        if (!chunk.isEmpty()) {
+            stats.recordValue(path, chunk);
+        }
+        text.setLength(0);
+        path = names.child(path, input.getPrefix(), input.getLocalName());
+        for (int walk = 0; walk < input.getAttributeCount(); walk++) {
+            Path withAttr = names.attribute(path, input.getAttributePrefix(walk), input.getAttributeLocalName(walk));
+            stats.recordValue(withAttr, input.getAttributeValue(walk));
+        }
+    }
+
+    public void characters(String chunk) {
+        text.append(chunk);
+    }
+
+    public void endElement() {
+        stats.recordValue(path, text.toString().trim());
+        text.setLength(0);
+        path = path.parent();
+    }
+
+    public Stats finish() {
+        stats.finish();
+        return stats;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+/**
+ * Hands out one shared string per distinct short value seen by a parser, so that values
+ * repeated across records, like rights statements, type codes and language codes, are
+ * not kept as a new string for every record.
+ * <p/>
+ * The table is a fixed number of slots addressed by the hash of the value, and a value
+ * simply takes over its slot from whatever was there, so its size never grows. Values
+ * longer than MAX_LENGTH are passed through. The table belongs to one parser.
+ *
+ */
+
+public class ValueTable {
+    public static final int DEFAULT_SLOTS = 4096;
+    public static final int MAX_LENGTH = 64;
+    private final String[] slots;
+    private final int mask;
+    private long lookups, hits;
+
+    public ValueTable() {
+        this(DEFAULT_SLOTS);
+    }
+
+    public ValueTable(int slotCount) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two, not " + slotCount);
+        }
+        this.slots = new String[slotCount];
+        this.mask = slotCount - 1;
+    }
+
+    /**
+     * @return the shared string equal to the value, or the value itself
+     */
+    public String value(String value) {
+        if (value.length() > MAX_LENGTH) {
+            return value;
+        }
+        lookups++;
+        int slot = spread(value.hashCode()) & mask;
+        String known = slots[slot];
+        if (known != null && known.equals(value)) {
+            hits++;
+            return known;
+        }
+        slots[slot] = value;
+        return value;
+    }
+
+    /**
+     * The characters of the sequence between start and end with whitespace trimmed from
+     * both ends, as String.trim would, without making a string when the value is known.
+     */
+    public String trimmedValue(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && chars.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return chars.subSequence(start, end).toString();
+        }
+        lookups++;
+        int hash = 0;
+        for (int walk = start; walk < end; walk++) {
+            hash = 31 * hash + chars.charAt(walk);
+        }
+        int slot = spread(hash) & mask;
+        String known = slots[slot];
+        if (known != null && known.length() == length && sameChars(known, chars, start)) {
+            hits++;
+            return known;
+        }
+        String value = chars.subSequence(start, end).toString();
+        slots[slot] = value;
+        return value;
+    }
+
+    private static boolean sameChars(String known, CharSequence chars, int start) {
+        for (int walk = 0; walk < known.length(); walk++) {
+            if (known.charAt(walk) != chars.charAt(start + walk)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return how many short values were looked up
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return how many of the lookups found the value already in the table
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d values shared (%.1f%%)", hits, lookups, 100 * getHitRate());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import eu.delving.groovy.GroovyNode;
+import eu.delving.groovy.MetadataRecord;
+import eu.delving.sip.xml.MetadataParser;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PocketStoreTest {
+    private static final Logger LOG = LoggerFactory.getLogger(PocketStoreTest.class);
+
+    @TempDir
+    File dir;
+
+    private static String source(int recordCount) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<pockets>\n");
+        for (int walk = 0; walk < recordCount; walk++) {
+            xml.append(String.format("<pocket id=\"rec-%d\"><record xmlns:dc=\"http://purl.org/dc/elements/1.1/\">", walk))
+                    .append(String.format("<dc:title xml:lang=\"nl\">Title %d caf\u00e9</dc:title>", walk))
+                    .append("<dc:subject>one</dc:subject><dc:subject>two</dc:subject>")
+                    .append(String.format("<part n=\"%d\"><name>part</name><empty/></part>", walk % 7))
+                    .append("</record></pocket>\n");
+        }
+        return xml.append("</pockets>\n").toString();
+    }
+
+    private static MetadataParser parser(String xml) throws Exception {
+        return new MetadataParser(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), -1);
+    }
+
+    private static String dump(GroovyNode node) {
+        StringBuilder out = new StringBuilder(node.qName().toString())
+                .append(node.attributes()).append('"').append(node.text).append("\"[");
+        for (GroovyNode child : node.getChildren()) {
+            out.append(dump(child));
+        }
+        return out.append(']').toString();
+    }
+
+    private File writeStore(String xml) throws Exception {
+        File file = new File(dir, Storage.FileType.SOURCE_POCKETS.getName());
+        MetadataParser parser = parser(xml);
+        try (PocketStore.Writer writer = new PocketStore.Writer(file, "stamp")) {
+            parser.setPocketWriter(writer);
+            while (parser.nextRecord() != null) {
+                // the parser appends every record to the store
+            }
+            writer.finish();
+        }
+        return file;
+    }
+
+    @Test
+    void shouldRebuildIdenticalTrees() throws Exception {
+        String xml = source(100);
+        File file = writeStore(xml);
+
+        List<String> parsed = new ArrayList<>();
+        MetadataParser parser = parser(xml);
+        MetadataRecord record;
+        while ((record = parser.nextRecord()) != null) {
+            parsed.add(record.getRecordNumber() + record.getId() + dump(record.getRootNode()));
+        }
+
+        List<String> stored = new ArrayList<>();
+        try (PocketStore.Reader reader = PocketStore.Reader.open(file, "stamp")) {
+            assertEquals(100, reader.getRecordCount());
+            while ((record = reader.nextRecord()) != null) {
+                stored.add(record.getRecordNumber() + record.getId() + dump(record.getRootNode()));
+            }
+        }
+        assertEquals(parsed, stored);
+    }
+
+    @Test
+    void shouldIgnoreStaleOrUnfinishedStores() throws Exception {
+        File file = writeStore(source(3));
+        assertNull(PocketStore.Reader.open(file, "another source"));
+
+        File unfinished = new File(dir, "unfinished.pockets");
+        try (PocketStore.Writer writer = new PocketStore.Writer(unfinished, "stamp")) {
+            MetadataParser parser = parser(source(3));
+            writer.append(parser.nextRecord());
+        }
+        assertFalse(unfinished.exists());
+        assertNull(PocketStore.Reader.open(unfinished, "stamp"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareWithParsing() throws Exception {
+        String xml = source(20000);
+        File file = writeStore(xml);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            MetadataParser parser = parser(xml);
+            int parsed = 0;
+            while (parser.nextRecord() != null) {
+                parsed++;
+            }
+            long xmlTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MetadataParser pockets = new MetadataParser(PocketStore.Reader.open(file, "stamp"));
+            int read = 0;
+            while (pockets.nextRecord() != null) {
+                read++;
+            }
+            pockets.close();
+            long storeTime = System.nanoTime() - start;
+
+            assertEquals(parsed, read);
+            LOG.info("{} records: xml {} ms, pocket store {} ms", parsed, xmlTime / 1000000, storeTime / 1000000);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.delving.groovy.GroovyNode;
+import eu.delving.groovy.MetadataRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void shouldMergeShardReports() throws Exception {
+        File part0 = write("part-0.json", "{\"records\":{\"a\":{\"type\":\"INVALID\",\"recordNumber\":1}}," +
+                "\"conclusions\":{\"total\":3,\"processed\":2,\"INVALID\":1,\"DISCARDED\":0,\"UNEXPECTED\":0,\"WARNING\":0}}");
+        File part1 = write("part-1.json", "{\"records\":{\"b\":{\"type\":\"WARNING\",\"recordNumber\":2,\"warnings\":[\"x\"]}}," +
+                "\"conclusions\":{\"total\":4,\"processed\":4,\"INVALID\":0,\"DISCARDED\":0,\"UNEXPECTED\":0,\"WARNING\":1}}");
+        File merged = new File(dir, "merged.json");
+
+        ReportWriter.merge(List.of(part0, part1), merged);
+
+        JsonNode report = new ObjectMapper().readTree(merged);
+        assertEquals("INVALID", report.path("records").path("a").path("type").asText());
+        assertEquals("x", report.path("records").path("b").path("warnings").path(0).asText());
+        JsonNode conclusions = report.path("conclusions");
+        assertEquals(7, conclusions.path("total").asInt());
+        assertEquals(6, conclusions.path("processed").asInt());
+        assertEquals(1, conclusions.path("INVALID").asInt());
+        assertEquals(1, conclusions.path("WARNING").asInt());
+    }
+
+    @Test
+    void shouldKeepDuplicatesApartFromRecords() throws Exception {
+        File reportFile = new File(dir, "report.json");
+        ReportWriter reportWriter = new ReportWriter(reportFile);
+        reportWriter.rejected("a", 0, "too big");
+        reportWriter.duplicate(record("a", 3), 0, false);
+        reportWriter.duplicate(record("a", 5), 0, true);
+        reportWriter.finish(6, 5);
+
+        JsonNode report = new ObjectMapper().readTree(reportFile);
+        assertEquals(1, report.path("records").size());
+        assertEquals("REJECTED", report.path("records").path("a").path("type").asText());
+        JsonNode duplicates = report.path("duplicates");
+        assertEquals(2, duplicates.size());
+        assertEquals("a", duplicates.path("3").path("id").asText());
+        assertFalse(duplicates.path("3").path("dropped").asBoolean());
+        assertEquals(0, duplicates.path("5").path("firstRecordNumber").asInt());
+        assertTrue(duplicates.path("5").path("dropped").asBoolean());
+        assertEquals(2, report.path("conclusions").path("DUPLICATE").asInt());
+        assertArrayEquals(new String[]{"report.json"}, dir.list());
+    }
+
+    @Test
+    void shouldMergeDuplicatesOfShards() throws Exception {
+        File part0 = write("part-0.json", "{\"records\":{},\"duplicates\":{\"4\":{\"id\":\"x\"}}," +
+                "\"conclusions\":{\"total\":3,\"DUPLICATE\":1}}");
+        File part1 = write("part-1.json", "{\"records\":{\"b\":{\"type\":\"INVALID\"}}," +
+                "\"conclusions\":{\"total\":4,\"DUPLICATE\":0}}");
+        File part2 = write("part-2.json", "{\"records\":{},\"duplicates\":{\"6\":{\"id\":\"y\"}}," +
+                "\"conclusions\":{\"total\":2,\"DUPLICATE\":1}}");
+        File merged = new File(dir, "merged.json");
+
+        ReportWriter.merge(List.of(part0, part1, part2), merged);
+
+        JsonNode report = new ObjectMapper().readTree(merged);
+        assertEquals("INVALID", report.path("records").path("b").path("type").asText());
+        assertEquals("x", report.path("duplicates").path("4").path("id").asText());
+        assertEquals("y", report.path("duplicates").path("6").path("id").asText());
+        assertEquals(2, report.path("conclusions").path("DUPLICATE").asInt());
+    }
+
+    private static MetadataRecord record(String id, int recordNumber) {
+        GroovyNode root = new GroovyNode(null, "pocket");
+        root.attributes().put("id", id);
+        return MetadataRecord.create(root, recordNumber, 10);
+    }
+
+    private File write(String name, String json) throws Exception {
+        File file = new File(dir, name);
+        Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+        return file;
+    }
+}
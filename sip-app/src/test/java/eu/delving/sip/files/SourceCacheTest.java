@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceCacheTest {
+
+    @TempDir
+    File dir;
+
+    private File writeSource(String content) throws Exception {
+        File source = new File(dir, Storage.FileType.SOURCE.getName());
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(source))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return source;
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void shouldServeUncompressedCopy() throws Exception {
+        File source = writeSource("<pockets><pocket id=\"1\"/></pockets>");
+        SourceCache cache = new SourceCache(dir);
+        assertFalse(cache.isValidFor(source));
+        assertEquals("<pockets><pocket id=\"1\"/></pockets>", read(cache.open(source)));
+        assertTrue(cache.isValidFor(source));
+        assertTrue(new File(dir, Storage.FileType.SOURCE_CACHE.getName()).exists());
+    }
+
+    @Test
+    void shouldRebuildWhenSourceChanges() throws Exception {
+        File source = writeSource("<pockets/>");
+        SourceCache cache = new SourceCache(dir);
+        assertEquals("<pockets/>", read(cache.open(source)));
+
+        source = writeSource("<pockets><pocket id=\"2\"/></pockets>");
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+        assertFalse(cache.isValidFor(source));
+        assertEquals("<pockets><pocket id=\"2\"/></pockets>", read(cache.open(source)));
+    }
+
+    @Test
+    void shouldReadSourceWhenStaleCopyCannotBeReplaced() throws Exception {
+        File source = writeSource("<pockets/>");
+        // a directory cannot be replaced, like a file which is still mapped on Windows
+        File copy = new File(dir, Storage.FileType.SOURCE_CACHE.getName());
+        assertTrue(new File(copy, "mapped").mkdirs());
+        SourceCache cache = new SourceCache(dir);
+        assertEquals("<pockets/>", read(cache.open(source)));
+        assertFalse(cache.isValidFor(source));
+        assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    void shouldDropBufferWhenClosed() throws Exception {
+        File file = new File(dir, "plain.txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+        }
+        InputStream in = new SourceCache.MappedInputStream(file);
+        assertEquals(10, in.available());
+        in.close();
+        assertEquals(0, in.available());
+        assertThrows(IOException.class, in::read);
+    }
+
+    @Test
+    void shouldSkipAndReadToTheEnd() throws Exception {
+        File file = new File(dir, "plain.txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = new SourceCache.MappedInputStream(file)) {
+            assertEquals(3, in.skip(3));
+            assertEquals('3', in.read());
+            assertEquals(6, in.skip(100));
+            assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.files;
+
+import eu.delving.groovy.MetadataRecord;
+import eu.delving.sip.xml.MetadataParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipSourceImporterTest {
+
+    @TempDir
+    File dir;
+
+    private File zip(int recordCount) throws Exception {
+        File zipFile = new File(dir, "harvest.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int walk = 0; walk < recordCount; walk++) {
+                out.putNextEntry(new ZipEntry(String.format("records/record-%d.xml", walk)));
+                out.write(String.format("<?xml version=\"1.0\"?>\n<oai:record xmlns:oai=\"http://www.openarchives.org/OAI/2.0/\" " +
+                        "xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Title &amp; %d</dc:title></oai:record>", walk)
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            out.putNextEntry(new ZipEntry("more.xml"));
+            out.write(("<pockets xmlns:dc=\"http://purl.org/dc/elements/1.1/\">" +
+                    "<pocket id=\"extra-1\"><dc:title>one</dc:title></pocket>" +
+                    "<pocket id=\"extra-2\"><dc:title>two</dc:title></pocket></pockets>").getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("readme.txt"));
+            out.write("not xml".getBytes(StandardCharsets.UTF_8));
+        }
+        return zipFile;
+    }
+
+    private static byte[] importWith(File zipFile, int threads) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipSourceImporter importer = new ZipSourceImporter(zipFile, threads);
+        importer.importTo(out, null);
+        assertEquals(202, importer.getPocketCount());
+        return out.toByteArray();
+    }
+
+    @Test
+    void shouldKeepEntryOrderWhateverTheThreads() throws Exception {
+        File zipFile = zip(200);
+        byte[] serial = importWith(zipFile, 1);
+        assertArrayEquals(serial, importWith(zipFile, 8));
+
+        MetadataParser parser = new MetadataParser(new ByteArrayInputStream(serial), -1);
+        List<String> ids = new ArrayList<>();
+        MetadataRecord record;
+        while ((record = parser.nextRecord()) != null) {
+            ids.add(record.getId());
+        }
+        assertEquals(202, ids.size());
+        assertEquals("record-0", ids.get(0));
+        assertEquals("record-199", ids.get(199));
+        assertEquals(List.of("extra-1", "extra-2"), ids.subList(200, 202));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The detector must give the record number at which an id was first seen, both while the
+ * ids are on the heap and after they moved to MapDB, and the processor must report every
+ * duplicate once and leave it out of the output only when asked to.
+ */
+class DuplicateIdDetectorTest {
+
+    @TempDir
+    File home;
+
+    @Test
+    void shouldReportFirstSeenOnHeap() {
+        DuplicateIdDetector detector = new DuplicateIdDetector(10);
+        assertEquals(-1, detector.check("a", 0));
+        assertEquals(-1, detector.check("b", 1));
+        assertEquals(0, detector.check("a", 2));
+        assertEquals(0, detector.check("a", 3));
+        assertEquals(1, detector.check("b", 4));
+        assertFalse(detector.isOnDisk());
+        assertEquals(3, detector.getDuplicateCount());
+        detector.close();
+    }
+
+    @Test
+    void shouldReportFirstSeenBeyondThreshold() {
+        DuplicateIdDetector detector = new DuplicateIdDetector(10);
+        for (int walk = 0; walk < 25; walk++) {
+            assertEquals(-1, detector.check("id" + walk, walk));
+            assertEquals(walk >= 10, detector.isOnDisk(), "after " + walk);
+        }
+        for (int walk = 0; walk < 25; walk++) {
+            assertEquals(walk, detector.check("id" + walk, 100 + walk));
+        }
+        assertEquals(-1, detector.check("new", 200));
+        assertEquals(25, detector.getDuplicateCount());
+        detector.close();
+        assertFalse(detector.isOnDisk());
+        assertEquals(-1, detector.check("id0", 0));
+    }
+
+    @Test
+    void shouldKeepDuplicateWhenNotDropping() throws Exception {
+        ProcessingFixture fixture = new ProcessingFixture(new File(home, "duplicated"), DuplicateIdDetectorTest::repeatFirstPocket);
+        List<String> single = singleRun(home);
+        fixture.process(processor -> { });
+        List<String> ids = fixture.processedIds();
+        assertEquals(single.size() + 1, ids.size());
+        assertEquals(2, Collections.frequency(ids, "158"));
+        checkReport(fixture.report(), false);
+    }
+
+    @Test
+    void shouldDropDuplicateWhenAsked() throws Exception {
+        ProcessingFixture fixture = new ProcessingFixture(new File(home, "duplicated"), DuplicateIdDetectorTest::repeatFirstPocket);
+        List<String> single = singleRun(home);
+        fixture.process(processor -> processor.setDropDuplicates(true));
+        List<String> ids = fixture.processedIds();
+        assertEquals(single, ids);
+        assertEquals(1, Collections.frequency(ids, "158"));
+        checkReport(fixture.report(), true);
+    }
+
+    private static List<String> singleRun(File home) throws Exception {
+        ProcessingFixture fixture = new ProcessingFixture(new File(home, "single"), source -> source);
+        fixture.process(processor -> { });
+        return fixture.processedIds();
+    }
+
+    private static void checkReport(JsonNode report, boolean dropped) {
+        assertEquals(1, report.path("conclusions").path("DUPLICATE").asInt());
+        for (Iterator<JsonNode> entries = report.path("records").elements(); entries.hasNext(); ) {
+            assertNotEquals("DUPLICATE", entries.next().path("type").asText());
+        }
+        JsonNode duplicates = report.path("duplicates");
+        assertEquals(1, duplicates.size());
+        JsonNode duplicate = duplicates.path("1");
+        assertEquals("158", duplicate.path("id").asText());
+        assertEquals(1, duplicate.path("recordNumber").asInt());
+        assertEquals(0, duplicate.path("firstRecordNumber").asInt());
+        assertEquals(dropped, duplicate.path("dropped").asBoolean());
+    }
+
+    private static String repeatFirstPocket(String source) {
+        int start = source.indexOf("<pocket ");
+        int end = source.indexOf("</pocket>", start) + "</pocket>".length();
+        return source.substring(0, end) + "\n  " + source.substring(start, end) + source.substring(end);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import eu.delving.groovy.GroovyNode;
+import eu.delving.groovy.MetadataRecord;
+import eu.delving.groovy.SourceMetadataRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataParserTest {
+    private static final String SOURCE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<pockets>\n" +
+            "  <pocket id=\"one\"><record><title>first</title></record></pocket>\n" +
+            "  <pocket id=\"two\"><record><title>second</title><title>too</title><title>many</title></record></pocket>\n" +
+            "  <pocket id=\"three\"><record><a><b><c>deep</c></b></a></record></pocket>\n" +
+            "  <pocket id=\"four\"><record><title>" + "x".repeat(100) + "</title></record></pocket>\n" +
+            "  <pocket id=\"five\"><record><title>last</title></record></pocket>\n" +
+            "</pockets>\n";
+
+    @Test
+    void shouldRejectRecordsBeyondLimits() throws Exception {
+        MetadataParser parser = new MetadataParser(
+                new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)), -1);
+        List<String> rejected = new ArrayList<>();
+        parser.setRecordLimits(50, 4, 3, (id, recordNumber, size, reason) -> rejected.add(id + "@" + recordNumber));
+
+        List<String> accepted = new ArrayList<>();
+        MetadataRecord record;
+        while ((record = parser.nextRecord()) != null) {
+            accepted.add(record.getId() + "@" + record.getRecordNumber());
+        }
+
+        assertEquals(List.of("one@0", "five@4"), accepted);
+        assertEquals(List.of("two@1", "three@2", "four@3"), rejected);
+    }
+
+    @Test
+    void shouldAcceptEverythingWithoutLimits() throws Exception {
+        MetadataParser parser = new MetadataParser(
+                new ByteArrayInputStream(SOURCE.getBytes(StandardCharsets.UTF_8)), -1);
+        int count = 0;
+        while (parser.nextRecord() != null) {
+            count++;
+        }
+        assertEquals(5, count);
+    }
+
+    @Test
+    void shouldAttachExactSourceText() throws Exception {
+        String first = "<pocket id=\"1\"><record a='single'><title>caf\u00e9 &amp; <![CDATA[raw]]></title></record></pocket>";
+        String second = "<pocket id=\"2\"><record><!-- note --><title>\uD83D\uDE00</title></record></pocket>";
+        String source = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<pockets>\n  " + first + "\n  " + second + "\n</pockets>\n";
+        MetadataParser parser = new MetadataParser(
+                new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), -1, true);
+
+        assertEquals(first, ((SourceMetadataRecord) parser.nextRecord()).getSourceXML());
+        assertEquals(second, ((SourceMetadataRecord) parser.nextRecord()).getSourceXML());
+        assertNull(parser.nextRecord());
+    }
+
+    @Test
+    void shouldShareRepeatedValuesAcrossRecords() throws Exception {
+        MetadataParser parser = new MetadataParser(
+                new ByteArrayInputStream(SOURCE.replaceAll("<title>[^<]*</title>", "<title lang=\"nl\"> rights </title>")
+                        .getBytes(StandardCharsets.UTF_8)), -1);
+        MetadataRecord first = parser.nextRecord();
+        MetadataRecord second = parser.nextRecord();
+        GroovyNode firstTitle = first.getRootNode().getChildren().get(0).getChildren().get(0);
+        GroovyNode secondTitle = second.getRootNode().getChildren().get(0).getChildren().get(0);
+        assertEquals("rights", firstTitle.text);
+        assertSame(firstTitle.text, secondTitle.text);
+        assertSame(firstTitle.attributes().get("lang"), secondTitle.attributes().get("lang"));
+        assertTrue(parser.getValueTable().getHitRate() > 0.5);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import eu.delving.groovy.GroovyCodeResource;
+import eu.delving.metadata.Hasher;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import eu.delving.sip.MockProgressListener;
+import eu.delving.sip.cli.CLIFeedback;
+import eu.delving.sip.files.DataSet;
+import eu.delving.sip.files.Storage;
+import eu.delving.sip.files.StorageImpl;
+import org.apache.jena.riot.RDFFormat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A copy of the aidsmemorial test dataset in a directory of its own, processed with its
+ * edm mapping, with the processed ids and the report at hand for checking.
+ */
+class ProcessingFixture {
+    private static final String DATASET = "/mapped/aidsmemorial__2016_07_25_20_52.sip.zip/";
+    static final String PREFIX = "edm";
+    private static final Pattern GRAPH_COMMENT = Pattern.compile("<!--<urn:dcn_aidsmemorial_(.+?)/graph__");
+
+    final File here;
+    final DataSet dataSet;
+
+    /**
+     * @param sourceEdit changes the text of the source before the dataset is opened
+     */
+    ProcessingFixture(File home, UnaryOperator<String> sourceEdit) throws Exception {
+        here = new File(home, "aidsmemorial");
+        assertTrue(here.mkdirs());
+        for (String name : new String[]{"source.xml.gz", "narthex_facts.txt", "hints.txt", "mapping_edm.xml", "edm_5.2.6_record-definition.xml"}) {
+            try (InputStream in = getClass().getResourceAsStream(DATASET + name)) {
+                assertNotNull(in, "Missing test resource " + name);
+                Files.copy(in, new File(here, name).toPath());
+            }
+        }
+        File source = new File(here, "source.xml.gz");
+        String text;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(source.toPath()))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(source.toPath()))) {
+            out.write(sourceEdit.apply(text).getBytes(StandardCharsets.UTF_8));
+        }
+        dataSet = new StorageImpl(home, new Properties(), null, null).getDataSets().values().iterator().next();
+    }
+
+    void process(Consumer<FileProcessor> setup) throws Exception {
+        RecMapping recMapping;
+        try (InputStream mapping = getClass().getResourceAsStream(DATASET + "mapping_edm.xml");
+             InputStream recDef = getClass().getResourceAsStream(DATASET + "edm_5.2.6_record-definition.xml")) {
+            recMapping = RecMapping.read(mapping, RecDefTree.create(RecDef.read(recDef)));
+        }
+        recMapping.getFacts().putAll(dataSet.getDataSetFacts());
+        List<String> outcome = new ArrayList<>();
+        FileProcessor processor = new FileProcessor(
+                new CLIFeedback(),
+                false,
+                false,
+                dataSet,
+                recMapping,
+                true,
+                new GroovyCodeResource(getClass().getClassLoader()),
+                id -> id,
+                new FileProcessor.Listener() {
+                    @Override
+                    public void failed(FileProcessor fileProcessor) {
+                        outcome.add("failed");
+                    }
+
+                    @Override
+                    public void aborted(FileProcessor fileProcessor) {
+                        outcome.add("aborted");
+                    }
+
+                    @Override
+                    public void succeeded(FileProcessor fileProcessor) {
+                        outcome.add("succeeded");
+                    }
+                },
+                RDFFormat.RDFXML);
+        setup.accept(processor);
+        processor.setProgressListener(new MockProgressListener());
+        processor.run();
+        assertEquals(List.of("succeeded"), outcome);
+    }
+
+    List<File> outputFiles() {
+        List<File> files = new ArrayList<>();
+        for (File file : Objects.requireNonNull(here.listFiles())) {
+            String name = Hasher.extractFileName(file);
+            if (name.startsWith("processed_" + PREFIX) || name.startsWith("report_" + PREFIX)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private File outputFile(Storage.FileType fileType) {
+        String name = fileType.getName(PREFIX);
+        for (File file : outputFiles()) {
+            if (Hasher.extractFileName(file).equals(name)) {
+                return file;
+            }
+        }
+        fail("No " + name);
+        return null;
+    }
+
+    /**
+     * @return the ids of the records in the processed output, in output order
+     */
+    List<String> processedIds() throws Exception {
+        String output;
+        try (InputStream in = new ZstdInputStream(Files.newInputStream(outputFile(Storage.FileType.PROCESSED).toPath()))) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = GRAPH_COMMENT.matcher(output);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    JsonNode report() throws Exception {
+        return new ObjectMapper().readTree(outputFile(Storage.FileType.REPORT_JSON));
+    }
+
+    JsonNode conclusions() throws Exception {
+        return report().path("conclusions");
+    }
+}
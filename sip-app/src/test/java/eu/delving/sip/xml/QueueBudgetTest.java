@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The queue budget admits records while they fit, blocks the parser when they do not, and
+ * wakes it as soon as an engine releases a record, well within the one second wait.
+ */
+class QueueBudgetTest {
+
+    @Test
+    void shouldAdmitWhileRecordsFit() throws Exception {
+        QueueBudget budget = new QueueBudget(100, 10);
+        budget.admit(40, () -> false);
+        budget.admit(60, () -> false);
+        assertEquals(100, budget.getQueuedSize());
+        assertEquals(2, budget.getQueuedRecords());
+        budget.release(40);
+        budget.release(60);
+        assertEquals(0, budget.getQueuedSize());
+        assertEquals(0, budget.getQueuedRecords());
+    }
+
+    @Test
+    void shouldAdmitOversizedRecordWhenEmpty() throws Exception {
+        QueueBudget budget = new QueueBudget(100, 10);
+        budget.admit(1000, () -> false);
+        assertEquals(1000, budget.getQueuedSize());
+        Thread blocked = admitLater(budget, 1);
+        assertBlocked(blocked);
+        budget.release(1000);
+        assertAdmitted(blocked);
+    }
+
+    @Test
+    void shouldBlockOverBudgetUntilRelease() throws Exception {
+        QueueBudget budget = new QueueBudget(100, 10);
+        budget.admit(70, () -> false);
+        Thread blocked = admitLater(budget, 50);
+        assertBlocked(blocked);
+        budget.release(70);
+        assertAdmitted(blocked);
+        assertEquals(50, budget.getQueuedSize());
+        assertEquals(1, budget.getQueuedRecords());
+    }
+
+    @Test
+    void shouldBlockAtRecordLimitUntilRelease() throws Exception {
+        QueueBudget budget = new QueueBudget(1000, 2);
+        budget.admit(1, () -> false);
+        budget.admit(1, () -> false);
+        Thread blocked = admitLater(budget, 1);
+        assertBlocked(blocked);
+        budget.release(1);
+        assertAdmitted(blocked);
+        assertEquals(2, budget.getQueuedRecords());
+    }
+
+    @Test
+    void shouldStopWaitingWhenAbandoned() throws Exception {
+        QueueBudget budget = new QueueBudget(100, 10);
+        budget.admit(100, () -> false);
+        long start = System.nanoTime();
+        budget.admit(100, () -> true);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(2, budget.getQueuedRecords());
+    }
+
+    private static Thread admitLater(QueueBudget budget, long size) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            started.countDown();
+            try {
+                budget.admit(size, () -> false);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        started.await();
+        return thread;
+    }
+
+    private static void assertBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+
+    private static void assertAdmitted(Thread thread) throws InterruptedException {
+        // sooner than the wait would time out by itself, so a lost notify fails
+        thread.join(500);
+        assertFalse(thread.isAlive(), "Still waiting after release");
+    }
+}
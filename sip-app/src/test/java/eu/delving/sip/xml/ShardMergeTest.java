@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Processing a dataset as two shards and merging them must give the output and report
+ * conclusions of processing it in one go.
+ */
+class ShardMergeTest {
+
+    @TempDir
+    File home;
+
+    @Test
+    void shouldMergeShardsIntoOneRun() throws Exception {
+        ProcessingFixture fixture = new ProcessingFixture(home, UnaryOperator.identity());
+
+        fixture.process(processor -> { });
+        List<String> whole = fixture.processedIds();
+        JsonNode wholeConclusions = fixture.conclusions();
+        for (File file : fixture.outputFiles()) {
+            assertTrue(file.delete());
+        }
+
+        fixture.process(processor -> processor.setShard(0, 2));
+        fixture.process(processor -> processor.setShard(1, 2));
+        fixture.dataSet.mergeShards(ProcessingFixture.PREFIX, 2, new Date());
+
+        List<String> merged = fixture.processedIds();
+        assertFalse(merged.isEmpty());
+        assertEquals(merged.size(), new HashSet<>(merged).size(), "A record was written more than once");
+        assertEquals(new HashSet<>(whole), new HashSet<>(merged));
+        assertEquals(wholeConclusions, fixture.conclusions());
+        assertEquals(30, fixture.conclusions().path("total").asInt());
+        assertEquals(2, fixture.outputFiles().size(), "The shard parts should be gone");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.sip.xml;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueTableTest {
+
+    @Test
+    void shouldShareRepeatedValues() {
+        ValueTable table = new ValueTable(16);
+        String first = table.value(new String("nl"));
+        assertSame(first, table.value(new String("nl")));
+        assertSame(first, table.trimmedValue(new StringBuilder("  nl\n"), 0, 5));
+        assertEquals(3, table.getLookups());
+        assertEquals(2, table.getHits());
+    }
+
+    @Test
+    void shouldTrimLikeString() {
+        ValueTable table = new ValueTable();
+        for (String text : new String[]{"", "   ", " a ", "\ta b\n", "x".repeat(ValueTable.MAX_LENGTH + 1) + " "}) {
+            StringBuilder chars = new StringBuilder(text);
+            assertEquals(text.trim(), table.trimmedValue(chars, 0, chars.length()));
+            assertEquals(text.trim(), table.trimmedValue(chars, 0, chars.length()));
+        }
+    }
+
+    @Test
+    void shouldStayBounded() {
+        ValueTable table = new ValueTable(4);
+        for (int walk = 0; walk < 1000; walk++) {
+            assertEquals("value" + walk, table.value("value" + walk));
+        }
+        String longValue = "y".repeat(ValueTable.MAX_LENGTH + 1);
+        assertSame(longValue, table.value(longValue));
+        assertEquals(1000, table.getLookups());
+    }
+}
@@ -19,24 +19,36 @@ package eu.delving.groovy;
 
 import eu.delving.metadata.RecDefTree;
 import eu.delving.metadata.RecMapping;
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
 
-import javax.script.CompiledScript;
-import javax.script.ScriptException;
-import javax.script.SimpleBindings;
+import java.util.function.Function;
 
 /**
  * Optimized implementation for high-throughput batch processing of mappings.
  * Pre-compiles the script for efficiency and provides minimal overhead.
+ * The script class comes from the compiled mappings of the EngineHolder, so a mapping
+ * that was run recently is not compiled again, and each thread that runs the mapping keeps its
+ * own instance of it, which only gets a fresh WORLD in its binding for every record. A runner
+ * made for a single record creates an instance per run instead, so that it leaves nothing
+ * behind on the thread, which may be a pooled one.
+ * The output is built with an OutputTreeBuilder, which leaves out empty elements as it goes,
+ * and only becomes a DOM when runMapping is asked for one.
  */
 public class BulkMappingRunner implements MappingRunner {
     private static final Logger LOG = LoggerFactory.getLogger(BulkMappingRunner.class);
 
-    private final CompiledScript compiledScript;
+    private static final String SCRIPT_NAME = "BulkMapping.groovy";
+    private final Class<?> scriptClass;
+    private final ThreadLocal<Script> scripts;
     private final RecMapping recMapping;
     private final String generatedCode;
+    private final Utils.BindingsTemplate bindingsTemplate;
 
     /**
      * Creates a new BulkMappingRunner with pre-compiled script for efficiency.
@@ -46,13 +58,46 @@ public class BulkMappingRunner implements MappingRunner {
      * @throws MappingException if script compilation fails
      */
     public BulkMappingRunner(RecMapping recMapping, String generatedCode) throws MappingException {
+        this(recMapping, generatedCode, null);
+    }
+
+    /**
+     * Creates a new BulkMappingRunner, taking the compiled script from the class cache when
+     * the same code was compiled before.
+     *
+     * @param recMapping    The mapping configuration to be applied
+     * @param generatedCode The Groovy code to be executed against each record
+     * @param classCache    The cache of compiled mapping scripts, or null to always compile
+     * @throws MappingException if script compilation fails
+     */
+    public BulkMappingRunner(RecMapping recMapping, String generatedCode, MappingClassCache classCache) throws MappingException {
+        this(recMapping, generatedCode, classCache, true);
+    }
+
+    /**
+     * Creates a new BulkMappingRunner, which keeps a script instance per thread only when it
+     * will map many records.
+     *
+     * @param recMapping    The mapping configuration to be applied
+     * @param generatedCode The Groovy code to be executed against each record
+     * @param classCache    The cache of compiled mapping scripts, or null to always compile
+     * @param reuseScripts  Keep a script instance per thread, rather than one per run
+     * @throws MappingException if script compilation fails
+     */
+    public BulkMappingRunner(RecMapping recMapping, String generatedCode, MappingClassCache classCache,
+                             boolean reuseScripts) throws MappingException {
         this.recMapping = recMapping;
+        this.scripts = reuseScripts ? ThreadLocal.withInitial(this::createScript) : null;
         this.generatedCode = generatedCode;
+        this.bindingsTemplate = new Utils.BindingsTemplate(
+                recMapping.getFacts(),
+                recMapping.getRecDefTree().getRecDef(),
+                recMapping.getRecDefTree().getRecDef().valueOptLookup);
 
         try {
-            this.compiledScript = EngineHolder.getInstance().compile(generatedCode);
-            EngineHolder.notifyCompilation();
-        } catch (ScriptException e) {
+            this.scriptClass = EngineHolder.getCompiledMappings().scriptClass(
+                    generatedCode, SCRIPT_NAME, EngineHolder.getInstance().getClassLoader(), classCache);
+        } catch (CompilationFailedException e) {
             LOG.error("Failed to compile mapping script: {}", e.getMessage());
             throw new MappingException(
                     MappingException.ErrorType.COMPILATION,
@@ -73,24 +118,48 @@ public class BulkMappingRunner implements MappingRunner {
 
     @Override
     public Node runMapping(MetadataRecord record) throws MappingException {
-        LOG.trace("Running mapping for record {}", record);
+        return runScript(record, OutputTreeBuilder::toNode);
+    }
 
-        try {
-            SimpleBindings bindings = Utils.bindingsFor(
-                    recMapping.getFacts(),
-                    recMapping.getRecDefTree().getRecDef(),
-                    record.getRootNode(),
-                    recMapping.getRecDefTree().getRecDef().valueOptLookup);
-
-            Object result = compiledScript.eval(bindings);
-            return Utils.stripEmptyElements(result);
-
-        } catch (ScriptException e) {
-            // Special handling for explicitly discarded records
-            if (e.getCause() instanceof DiscardRecordException) {
-                throw (DiscardRecordException) e.getCause();
+    /**
+     * Runs the mapping and writes its output straight to XML, as the serializer would write
+     * the node from runMapping, for when no DOM is needed.
+     *
+     * @param record     The record to map
+     * @param serializer The serializer to write with
+     * @return the XML of the mapping output
+     * @throws MappingException if the mapping fails
+     */
+    public String runMappingToXml(MetadataRecord record, XmlSerializer serializer) throws MappingException {
+        return runScript(record, output -> {
+            if (output instanceof OutputTreeBuilder.OutputElement) {
+                return serializer.toXml((OutputTreeBuilder.OutputElement) output);
             }
+            return serializer.toXml(OutputTreeBuilder.toNode(output), true);
+        });
+    }
+
+    private Script createScript() {
+        return InvokerHelper.createScript(scriptClass, new Binding());
+    }
+
+    private <T> T runScript(MetadataRecord record, Function<Object, T> render) throws MappingException {
+        LOG.trace("Running mapping for record {}", record);
 
+        Object result;
+        try {
+            OutputTreeBuilder output = OutputTreeBuilder.createFor(recMapping.getRecDefTree().getRecDef());
+            Script script = scripts != null ? scripts.get() : createScript();
+            Binding binding = script.getBinding();
+            binding.getVariables().clear();
+            binding.setVariable("WORLD", bindingsTemplate.worldFor(record.getRootNode(), output));
+            result = script.run();
+
+        } catch (DiscardRecordException e) {
+            // Explicitly discarded records are passed on as they are
+            throw e;
+
+        } catch (Exception e) {
             // Handle other execution errors
             String errorMessage = String.format(
                     "Failed to process record (id=%s, number=%s)",
@@ -102,6 +171,11 @@ public class BulkMappingRunner implements MappingRunner {
                     MappingException.ErrorType.EXECUTION,
                     errorMessage,
                     e);
+        }
+
+        try {
+            return render.apply(result);
+
         } catch (RuntimeException e) {
             // Handle unexpected runtime errors
             String errorMessage = String.format(
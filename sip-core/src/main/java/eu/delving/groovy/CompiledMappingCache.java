@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovySystem;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recently used compiled mapping scripts, found by the SHA-256 hash of their code.
+ * <p/>
+ * Every mapping is compiled in a class loader of its own whose parent is the loader with the
+ * MappingCategory, so that the classes of a mapping which drops out of the cache can be
+ * collected along with their loader, freeing Metaspace, while the mappings still in use stay
+ * compiled. Script instances are not kept here, since they are not thread safe, only classes.
+ *
+ */
+
+public class CompiledMappingCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledMappingCache.class);
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+    private final Map<String, Class<?>> scriptClasses = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries;
+    private long hits, misses, evictions;
+
+    public CompiledMappingCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public CompiledMappingCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get the script class of the code, compiling it if it is not among the recently used.
+     *
+     * @param code       the script code
+     * @param scriptName the file name which the script is compiled under
+     * @param parent     the loader with the MappingCategory, parent of the loader of the script
+     * @param classCache the compiled classes on disk, or null to compile in memory only
+     * @return the script class
+     * @throws CompilationFailedException if the code does not compile
+     */
+    public Class<?> scriptClass(String code, String scriptName, GroovyClassLoader parent, MappingClassCache classCache) throws CompilationFailedException {
+        String key = MappingClassCache.key(code, scriptName);
+        synchronized (this) {
+            Class<?> scriptClass = scriptClasses.get(key);
+            if (scriptClass != null) {
+                hits++;
+                return scriptClass;
+            }
+            misses++;
+        }
+        Class<?> scriptClass;
+        if (classCache != null) {
+            scriptClass = classCache.scriptClass(code, scriptName, parent);
+        }
+        else {
+            GroovyCodeSource codeSource = new GroovyCodeSource(code, scriptName, "/groovy/script");
+            scriptClass = new GroovyClassLoader(parent).parseClass(codeSource, false);
+        }
+        synchronized (this) {
+            // another thread may have compiled the same code in the meantime
+            Class<?> existing = scriptClasses.putIfAbsent(key, scriptClass);
+            if (existing != null) return existing;
+            evictBeyond(maxEntries);
+        }
+        return scriptClass;
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evictBeyond(maxEntries);
+    }
+
+    public synchronized void clear() {
+        for (Class<?> scriptClass : scriptClasses.values()) {
+            GroovySystem.getMetaClassRegistry().removeMetaClass(scriptClass);
+        }
+        scriptClasses.clear();
+    }
+
+    public synchronized int size() {
+        return scriptClasses.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized Statistics snapshot() {
+        return new Statistics(scriptClasses.size(), maxEntries, hits, misses, evictions);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * The counters of the cache at one moment. The engines share one cache, so a run reports
+     * the difference between a snapshot at its start and one at its end.
+     */
+    public static class Statistics {
+        public final int size, maxEntries;
+        public final long hits, misses, evictions;
+
+        private Statistics(int size, int maxEntries, long hits, long misses, long evictions) {
+            this.size = size;
+            this.maxEntries = maxEntries;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public Statistics since(Statistics start) {
+            return new Statistics(size, maxEntries, hits - start.hits, misses - start.misses, evictions - start.evictions);
+        }
+
+        public boolean isEmpty() {
+            return hits + misses == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Compiled mappings: %d of %d kept, %d hits, %d misses, %d evictions",
+                    size, maxEntries, hits, misses, evictions);
+        }
+    }
+
+    private void evictBeyond(int count) {
+        while (scriptClasses.size() > count) {
+            Map.Entry<String, Class<?>> eldest = scriptClasses.entrySet().iterator().next();
+            scriptClasses.remove(eldest.getKey());
+            // runners still using the class keep it, otherwise it goes with its loader
+            GroovySystem.getMetaClassRegistry().removeMetaClass(eldest.getValue());
+            evictions++;
+            LOG.debug("Evicted compiled mapping {}", eldest.getKey());
+        }
+    }
+}
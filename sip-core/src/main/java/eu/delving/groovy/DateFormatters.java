@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The date formatters used by the mapping functions, one per pattern, shared by all engines
+ * since a DateTimeFormatter is immutable, where a SimpleDateFormat had to be created for
+ * every call.
+ * <p/>
+ * Dates are parsed the way a lenient SimpleDateFormat parses them, so that the functions
+ * give the same answers as before: any number of digits per field, fields beyond their
+ * range carried over, and text after the date ignored. The fields become a time through a
+ * calendar kept per thread, which takes dates before the Gregorian reform as Julian dates
+ * and knows the historical offsets of the time zone just like the SimpleDateFormat did.
+ *
+ */
+
+public class DateFormatters {
+    private static final Map<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+    private static final ThreadLocal<GregorianCalendar> calendars = ThreadLocal.withInitial(GregorianCalendar::new);
+
+    private DateFormatters() {
+    }
+
+    public static DateTimeFormatter forPattern(String pattern) {
+        return formatters.computeIfAbsent(pattern, p -> new DateTimeFormatterBuilder()
+                .parseLenient()
+                .appendPattern(p)
+                .toFormatter()
+                .withResolverStyle(ResolverStyle.LENIENT));
+    }
+
+    /**
+     * Parse a date of year, month and day as new SimpleDateFormat(pattern).parse(text).getTime()
+     * would, at the start of the day in the default time zone.
+     *
+     * @param text    the text starting with the date
+     * @param pattern the pattern of the date
+     * @return the milliseconds since the epoch
+     * @throws DateTimeException if the text does not start with a date, or the date is out of range
+     */
+    public static long parseDateMillis(String text, String pattern) {
+        ParsePosition position = new ParsePosition(0);
+        while (position.getIndex() < text.length() && isBlank(text.charAt(position.getIndex()))) {
+            position.setIndex(position.getIndex() + 1);
+        }
+        int start = position.getIndex();
+        TemporalAccessor fields = forPattern(pattern).parseUnresolved(text, position);
+        // a lenient formatter takes a plus sign, which the SimpleDateFormat did not
+        if (fields == null || position.getErrorIndex() >= 0 || text.lastIndexOf('+', position.getIndex() - 1) >= start) {
+            throw new DateTimeParseException("Unparseable date: \"" + text + "\"", text, Math.max(position.getErrorIndex(), 0));
+        }
+        try {
+            GregorianCalendar calendar = calendars.get();
+            calendar.setTimeZone(TimeZone.getDefault());
+            calendar.clear();
+            calendar.set(
+                    Math.toIntExact(field(fields, ChronoField.YEAR_OF_ERA, field(fields, ChronoField.YEAR, 1970))),
+                    Math.toIntExact(field(fields, ChronoField.MONTH_OF_YEAR, 1) - 1),
+                    Math.toIntExact(field(fields, ChronoField.DAY_OF_MONTH, 1)));
+            return calendar.getTimeInMillis();
+        }
+        catch (ArithmeticException e) {
+            throw new DateTimeParseException("Date out of range: \"" + text + "\"", text, 0, e);
+        }
+    }
+
+    private static long field(TemporalAccessor fields, ChronoField field, long defaultValue) {
+        return fields.isSupported(field) ? fields.getLong(field) : defaultValue;
+    }
+
+    private static boolean isBlank(char ch) {
+        return ch == ' ' || ch == '\t';
+    }
+}
@@ -28,14 +28,13 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread-safe holder of the singleton Groovy scripting engine that processes our mappings.
  *
- * Includes automatic reset functionality to prevent Metaspace exhaustion from accumulated
- * compiled Groovy classes. When the compilation count reaches the threshold, the engine
- * is reset and the old classloader becomes eligible for garbage collection.
+ * The engine's loader holds the MappingCategory. Compiled mappings are kept in a bounded
+ * cache of their own, each in a loader whose parent is the engine's, so the engine stays
+ * while mappings that are no longer used are dropped and their classes collected.
  */
 public class EngineHolder {
 
@@ -46,12 +45,7 @@ public class EngineHolder {
     // Volatile for proper visibility across threads
     private static volatile GroovyScriptEngineImpl INSTANCE;
 
-    // Track number of script compilations since last reset
-    private static final AtomicInteger compilationCount = new AtomicInteger(0);
-
-    // Reset after N unique script compilations to prevent Metaspace exhaustion
-    // Set to 0 to disable automatic reset
-    private static int maxCompilationsBeforeReset = 100;
+    private static final CompiledMappingCache COMPILED_MAPPINGS = new CompiledMappingCache();
 
     private EngineHolder() { }
 
@@ -71,50 +65,10 @@ public class EngineHolder {
     }
 
     /**
-     * Call this after compiling a new script to track compilation count.
-     * Will trigger engine reset if threshold is reached.
-     */
-    public static void notifyCompilation() {
-        if (maxCompilationsBeforeReset > 0) {
-            int count = compilationCount.incrementAndGet();
-            if (count >= maxCompilationsBeforeReset) {
-                LOG.info("Compilation count {} reached threshold {}, resetting engine",
-                    count, maxCompilationsBeforeReset);
-                reset();
-            }
-        }
-    }
-
-    /**
-     * Force reset of the engine. The old engine and its classloader
-     * become eligible for garbage collection, freeing Metaspace.
-     */
-    public static synchronized void reset() {
-        if (INSTANCE != null) {
-            LOG.info("Resetting GroovyScriptEngine to free Metaspace");
-            INSTANCE = null;
-            compilationCount.set(0);
-            // Let JVM handle GC timing naturally. Explicit System.gc() can evict
-            // font glyph caches held by SoftReferences, which combined with the
-            // Metal pipeline bug (JDK-8349701) causes progressive font rendering
-            // corruption on macOS Apple Silicon.
-        }
-    }
-
-    /**
-     * Configure the compilation threshold for automatic reset.
-     * @param threshold Number of compilations before reset (0 to disable)
-     */
-    public static void setResetThreshold(int threshold) {
-        maxCompilationsBeforeReset = threshold;
-        LOG.info("EngineHolder reset threshold set to {}", threshold);
-    }
-
-    /**
-     * Get current compilation count since last reset.
+     * Get the most recently used compiled mappings, shared by all bulk mapping runners.
      */
-    public static int getCompilationCount() {
-        return compilationCount.get();
+    public static CompiledMappingCache getCompiledMappings() {
+        return COMPILED_MAPPINGS;
     }
 
     /**
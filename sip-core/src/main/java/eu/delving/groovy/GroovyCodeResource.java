@@ -19,15 +19,15 @@ package eu.delving.groovy;
 
 import eu.delving.metadata.Assertion;
 import eu.delving.metadata.MappingFunction;
+import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.GroovySystem;
 import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import java.io.*;
 import java.net.URL;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -36,17 +36,36 @@ import java.util.Map;
  * <p/>
  * For DSL aspects, the MappingCategory is automatically wrapped around the builder code
  * which does the mapping transformation.
+ * <p/>
+ * Compiled mapping scripts are kept in a CompiledMappingCache, each in a loader of its own.
+ * A MappingClassCache given here is only handed to bulk runs, through getClassCache, so that
+ * the code compiled while a mapping is being edited does not push theirs out of it.
  *
  */
 public class GroovyCodeResource {
     private static final URL MAPPING_CATEGORY = GroovyCodeResource.class.getResource("/MappingCategory.groovy");
+    // the name GroovyShell gives a parsed script, which AppMappingRunner finds in stack traces
+    private static final String MAPPING_SCRIPT_NAME = "Script1.groovy";
     private final ClassLoader classLoader;
+    private final MappingClassCache classCache;
     private GroovyClassLoader categoryClassLoader;
     private GroovyClassLoader childClassLoader;
-    private Map<Long, Script> mappingScriptsByCode = Collections.synchronizedMap(new HashMap<>());
+    private final CompiledMappingCache compiledMappings = new CompiledMappingCache();
 
     public GroovyCodeResource(ClassLoader classLoader) {
+        this(classLoader, null);
+    }
+
+    public GroovyCodeResource(ClassLoader classLoader, MappingClassCache classCache) {
         this.classLoader = classLoader;
+        this.classCache = classCache;
+    }
+
+    /**
+     * @return the compiled classes on disk for bulk runs to use, or null if there are none
+     */
+    public MappingClassCache getClassCache() {
+        return classCache;
     }
 
     public Script createValidationScript(Assertion assertion) {
@@ -69,34 +88,33 @@ public class GroovyCodeResource {
         return new GroovyShell(getGroovyClassLoader()).parse(scriptCode.toString());
     }
 
+    /**
+     * Create an instance of the mapping script of the code. The class is compiled only if the
+     * same code was not compiled recently, but every call gets an instance of its own.
+     */
     public Script createMappingScript(String code) {
-        long codeId = code.hashCode() + Thread.currentThread().getId();
-        Script script = mappingScriptsByCode.get(codeId);
-        if(script != null) {
-            return script;
-        }
-
-        GroovyShell groovyShell = new GroovyShell(getGroovyClassLoader());
-        script = groovyShell.parse(code);
+        Class<?> scriptClass = compiledMappings.scriptClass(code, MAPPING_SCRIPT_NAME, getCategoryClassLoader(), null);
+        return InvokerHelper.createScript(scriptClass, new Binding());
+    }
 
-        mappingScriptsByCode.put(codeId, script);
-        return script;
+    public CompiledMappingCache getCompiledMappings() {
+        return compiledMappings;
     }
 
     public void clearMappingScripts() {
-        mappingScriptsByCode.clear();
+        compiledMappings.clear();
     }
 
     /**
-     * Reset the child classloader, forcing a fresh one on next compilation.
-     * Call this when the mapping context changes (e.g., new mapping loaded).
+     * Reset the child classloader of validation and function scripts, forcing a fresh one on
+     * next compilation. Compiled mappings have loaders of their own and are kept, so call
+     * clearMappingScripts as well when the mapping itself changes.
      */
     public synchronized void resetClassLoader() {
         childClassLoader = null;
-        mappingScriptsByCode.clear();
     }
 
-    private synchronized GroovyClassLoader getGroovyClassLoader() {
+    private synchronized GroovyClassLoader getCategoryClassLoader() {
         if (categoryClassLoader == null) {
             try {
                 categoryClassLoader = new GroovyClassLoader(this.classLoader);
@@ -107,11 +125,15 @@ public class GroovyCodeResource {
                 throw new RuntimeException("Cannot initialize Groovy Code Resource", e);
             }
         }
+        return categoryClassLoader;
+    }
+
+    private synchronized GroovyClassLoader getGroovyClassLoader() {
         // Reuse the child classloader to avoid excessive classloader churn.
         // Creating a new GroovyClassLoader on every compilation causes Metaspace
         // pressure that triggers GC, which evicts font glyph caches.
         if (childClassLoader == null) {
-            childClassLoader = new GroovyClassLoader(categoryClassLoader);
+            childClassLoader = new GroovyClassLoader(getCategoryClassLoader());
         }
         return childClassLoader;
     }
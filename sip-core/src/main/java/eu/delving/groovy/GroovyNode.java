@@ -26,6 +26,7 @@ import groovy.util.NodeList;
 import groovy.namespace.QName;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A variation on the Groovy Node class which is used to store XML-like data
@@ -35,29 +36,38 @@ import java.util.*;
  * it easier to use these as input variables in the mapping code.
  * <p/>
  * The MetadataParser produces records containing structures of these nodes.
+ * <p/>
+ * Since a large record can consist of very many nodes, they are kept small: the value
+ * is held once in text, attributes live in a sorted key/value array behind a map view,
+ * children are only allocated for nodes that have them, and qualified names are shared.
  *
  *
  */
 @SuppressWarnings("unchecked")
 @CompileStatic
 public class GroovyNode {
+    private static final int MAX_SHARED_NAMES = 10000;
+    private static final int MAX_NAMESPACES_PER_NAME = 8;
+    private static final int INDEXED_CHILDREN = 16;
+    private static final String[] NO_ATTRIBUTES = new String[0];
+    // by local name, the qualified names seen with it in different namespaces or prefixes
+    private static final Map<String, QName[]> SHARED_NAMES = new ConcurrentHashMap<>();
 
     private GroovyNode parent;
     private QName qName;
     private String stringName;
-    private Map<String, String> attributes;
-    // TODO make sure accessors can handle its new value type
-    private Object nodeValue;
-    private int hashCode;
+    // alternating keys and values, sorted by key
+    private String[] attributes = NO_ATTRIBUTES;
     public String text;
-    public final List<GroovyNode> children = new NodeList(1);
+    private List<GroovyNode> children;
+    private volatile ChildIndex childIndex;
 
     public GroovyNode(GroovyNode parent, String namespaceUri, String localName, String prefix) {
-        this(parent, new QName(namespaceUri, localName, prefix == null ? "" : prefix));
+        this(parent, sharedQName(namespaceUri, localName, prefix == null ? "" : prefix));
     }
 
     public GroovyNode(GroovyNode parent, String name) {
-        this(parent, new QName(name), null);
+        this(parent, sharedQName("", name, ""), null);
     }
 
     public GroovyNode(GroovyNode parent, QName qName) {
@@ -65,25 +75,67 @@ public class GroovyNode {
     }
 
     public GroovyNode(GroovyNode parent, String name, String nodeValue) {
-        this(parent, new QName(name), new TreeMap<>(), nodeValue);
+        this(parent, sharedQName("", name, ""), null, nodeValue);
     }
 
     public GroovyNode(GroovyNode parent, QName qName, String nodeValue) {
-        this(parent, qName, new TreeMap<>(), nodeValue);
+        this(parent, qName, null, nodeValue);
     }
 
     public GroovyNode(GroovyNode parent, QName qName, Map<String, String> attributes, String nodeValue) {
         this.parent = parent;
         this.qName = qName;
-        this.attributes = attributes;
+        if (attributes != null && !attributes.isEmpty()) {
+            attributes().putAll(attributes);
+        }
 
-        if (parent != null)
+        if (parent != null) {
+            if (parent.children == null)
+                parent.children = new NodeList(1);
             parent.children.add(this);
+        }
         setNodeValue(nodeValue);
     }
 
+    /**
+     * Names repeat endlessly within a dataset, so nodes share their QName instances
+     * through a cache keyed by local name and then namespace and prefix, up to a limit
+     * to survive hostile input.
+     */
+    private static QName sharedQName(String namespaceUri, String localName, String prefix) {
+        QName[] shared = SHARED_NAMES.get(localName);
+        if (shared != null) {
+            for (QName name : shared) {
+                if (Objects.equals(name.getNamespaceURI(), namespaceUri) && name.getPrefix().equals(prefix)) {
+                    return name;
+                }
+            }
+        }
+        QName qName = new QName(namespaceUri, localName, prefix);
+        if (shared == null ? SHARED_NAMES.size() < MAX_SHARED_NAMES : shared.length < MAX_NAMESPACES_PER_NAME) {
+            SHARED_NAMES.merge(localName, new QName[]{qName}, GroovyNode::withName);
+        }
+        return qName;
+    }
+
+    private static QName[] withName(QName[] names, QName[] added) {
+        QName name = added[0];
+        for (QName present : names) {
+            if (Objects.equals(present.getNamespaceURI(), name.getNamespaceURI()) && present.getPrefix().equals(name.getPrefix())) {
+                return names;
+            }
+        }
+        if (names.length >= MAX_NAMESPACES_PER_NAME) return names;
+        QName[] more = Arrays.copyOf(names, names.length + 1);
+        more[names.length] = name;
+        return more;
+    }
+
+    /**
+     * @return a live, modifiable view of the attributes, iterating in key order
+     */
     public Map<String, String> attributes() {
-        return attributes;
+        return new AttributeMap();
     }
 
     public QName qName() {
@@ -116,25 +168,19 @@ public class GroovyNode {
     }
 
     public Object getNodeValue() {
-        return nodeValue;
+        return text;
     }
 
     public void setNodeValue(String nodeValue) {
-        if(nodeValue != null) {
-            this.text = nodeValue.trim();
-            this.hashCode = text.hashCode();
-        } else {
-            this.text = "";
-        }
-        this.nodeValue = text;
+        this.text = nodeValue != null ? nodeValue.trim() : "";
     }
 
     public GroovyNode parent() {
         return parent;
     }
 
-    public List getChildren() {
-        return children;
+    public List<GroovyNode> getChildren() {
+        return children != null ? children : Collections.emptyList();
     }
 
     public String text() {
@@ -154,7 +200,7 @@ public class GroovyNode {
             if (attributeValue != null) answer.add(attributeValue);
             return answer;
         }
-        if ("*".equals(key)) return children;
+        if ("*".equals(key)) return children != null ? children : new NodeList(0);
         if (key != null && key.endsWith("_")) {
             GroovyNode node = findFirstMatch(key.substring(0, key.length()-1));
             return node == null ? "" : node;
@@ -166,31 +212,50 @@ public class GroovyNode {
     public boolean equals(Object other) {
         if (other == null)
             return false;
-        if (hashCode != other.hashCode())
+        if (hashCode() != other.hashCode())
             return false;
         return text.equals(other.toString());
     }
 
     @Override
     public int hashCode() {
-        return hashCode;
+        return text.hashCode();
     }
 
     public String toString() {
         return text;
     }
 
-    private List getByName(String name) {
-        List answer = new NodeList(1);
-        for (GroovyNode child : children) {
-            if (name.equals(child.getNodeName())) answer.add(child);
+    /**
+     * Wide nodes are looked up by name again and again by the mapping code, so beyond
+     * a handful of children the lookup goes through an index by name, built on first use.
+     * The index is never changed once it is published, since a node can be read by several
+     * threads, and a new one is built when children have been added since.
+     */
+    List<GroovyNode> getByName(String name) {
+        if (children == null) return new NodeList(0);
+        if (children.size() < INDEXED_CHILDREN) {
+            List<GroovyNode> answer = new NodeList(1);
+            for (GroovyNode child : children) {
+                if (name.equals(child.getNodeName())) answer.add(child);
+            }
+            return answer;
         }
+        ChildIndex index = childIndex;
+        if (index == null || index.count != children.size()) {
+            index = new ChildIndex(children);
+            childIndex = index;
+        }
+        List<GroovyNode> named = index.byName.get(name);
+        List<GroovyNode> answer = new NodeList(named == null ? 0 : named.size());
+        if (named != null) answer.addAll(named);
         return answer;
     }
 
     private GroovyNode findFirstMatch(String name) {
         if (getNodeName().equals(name) && !text.isEmpty())
             return this;
+        if (children == null) return null;
         for (GroovyNode node : children) {
             GroovyNode match = node.findFirstMatch(name);
             if (match != null) return match;
@@ -209,12 +274,153 @@ public class GroovyNode {
         if (name.equals(this.getNodeName())) {
             if (text != null && !text.isEmpty()) answer.add(this);
         }
-
+        if (children == null) return;
         for (GroovyNode child : children) {
             child.getValueNodes(name, answer);
         }
     }
 
+    private int attributeIndex(Object key) {
+        int low = 0;
+        int high = attributes.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = attributes[mid * 2].compareTo((String) key);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // filled in the constructor and only read after that
+    private static class ChildIndex {
+        final Map<String, List<GroovyNode>> byName = new HashMap<>();
+        final int count;
+
+        ChildIndex(List<GroovyNode> children) {
+            count = children.size();
+            for (int walk = 0; walk < count; walk++) {
+                GroovyNode child = children.get(walk);
+                byName.computeIfAbsent(child.getNodeName(), name -> new ArrayList<>(2)).add(child);
+            }
+        }
+    }
+
+    private class AttributeMap extends AbstractMap<String, String> {
+
+        @Override
+        public int size() {
+            return attributes.length / 2;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && attributeIndex(key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            if (!(key instanceof String)) return null;
+            int index = attributeIndex(key);
+            return index >= 0 ? attributes[index * 2 + 1] : null;
+        }
+
+        @Override
+        public String put(String key, String value) {
+            int index = attributeIndex(Objects.requireNonNull(key));
+            if (index >= 0) {
+                String previous = attributes[index * 2 + 1];
+                attributes[index * 2 + 1] = value;
+                return previous;
+            }
+            int at = (-index - 1) * 2;
+            String[] grown = new String[attributes.length + 2];
+            System.arraycopy(attributes, 0, grown, 0, at);
+            grown[at] = key;
+            grown[at + 1] = value;
+            System.arraycopy(attributes, at, grown, at + 2, attributes.length - at);
+            attributes = grown;
+            return null;
+        }
+
+        @Override
+        public String remove(Object key) {
+            if (!(key instanceof String)) return null;
+            int index = attributeIndex(key);
+            if (index < 0) return null;
+            String previous = attributes[index * 2 + 1];
+            removeAt(index);
+            return previous;
+        }
+
+        private void removeAt(int index) {
+            int at = index * 2;
+            if (attributes.length == 2) {
+                attributes = NO_ATTRIBUTES;
+                return;
+            }
+            String[] shrunk = new String[attributes.length - 2];
+            System.arraycopy(attributes, 0, shrunk, 0, at);
+            System.arraycopy(attributes, at + 2, shrunk, at, attributes.length - at - 2);
+            attributes = shrunk;
+        }
+
+        @Override
+        public void clear() {
+            attributes = NO_ATTRIBUTES;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return attributes.length / 2;
+                }
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        int next;
+                        int last = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < attributes.length / 2;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            last = next++;
+                            final String key = attributes[last * 2];
+                            return new SimpleEntry<String, String>(key, attributes[last * 2 + 1]) {
+                                @Override
+                                public String setValue(String value) {
+                                    super.setValue(value);
+                                    return put(key, value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0) throw new IllegalStateException();
+                            removeAt(last);
+                            next = last;
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
     protected static void setMetaClass(final MetaClass metaClass, Class nodeClass) {
         final MetaClass newMetaClass = new DelegatingMetaClass(metaClass) {
             @Override
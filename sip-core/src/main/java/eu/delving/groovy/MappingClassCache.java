@@ -0,0 +1,303 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the class files of compiled mapping scripts in a directory, so that a mapping which
+ * was processed before, by an earlier bulk run of the CLI, the gRPC server or the GUI, is
+ * defined from its class files instead of being compiled again.
+ * <p/>
+ * An entry is found by the SHA-256 hash of the Groovy version, the sip-core jar or classes
+ * directory, the script name and the code, so any change to the generated code, to sip-core
+ * or to Groovy makes a new entry. Entries are files that are written to a temporary name and
+ * then renamed, and a file which cannot be read is treated as missing. Using an entry touches
+ * it, and the least recently used entries are deleted when there are more than MAX_ENTRIES.
+ *
+ */
+
+public class MappingClassCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MappingClassCache.class);
+    private static final String SUFFIX = ".classes";
+    private static final String INPROGRESS_SUFFIX = ".inprogress";
+    private static final int FORMAT = 1;
+    public static final int MAX_ENTRIES = 256;
+    private static final byte[] ABI = abi();
+    private final File dir;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MappingClassCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Define the script class of the code, from the class files of an earlier compilation if
+     * there are any, otherwise compiling it and keeping its class files for next time.
+     *
+     * @param code       the script code
+     * @param scriptName the file name which the script is compiled under, which gives the class name
+     * @param loader     the loader which resolves the classes the script uses, such as the MappingCategory
+     * @return the script class, defined in a loader of its own whose parent is the given loader
+     * @throws CompilationFailedException if the code does not compile
+     */
+    public Class<?> scriptClass(String code, String scriptName, GroovyClassLoader loader) throws CompilationFailedException {
+        File file = new File(dir, key(code, scriptName) + SUFFIX);
+        ScriptClasses classes = read(file);
+        if (classes != null) {
+            hits.incrementAndGet();
+            file.setLastModified(System.currentTimeMillis());
+        }
+        else {
+            misses.incrementAndGet();
+            classes = compile(code, scriptName, loader);
+            write(file, classes);
+        }
+        try {
+            return new ScriptClassLoader(loader, classes.classFiles).loadClass(classes.scriptClassName);
+        }
+        catch (ClassNotFoundException e) {
+            throw new RuntimeException("Script class missing from " + file.getName(), e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compiled mapping classes: %d from %s, %d compiled", hits.get(), dir, misses.get());
+    }
+
+    static String key(String code, String scriptName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(GroovySystem.getVersion().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(ABI);
+            digest.update((byte) '\n');
+            digest.update(scriptName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The hash of the sip-core build which the generated code is compiled against, being the jar
+     * or directory that this class comes from, so a new build does not run class files compiled
+     * against an old one. Without a code source, entries are only found within this process.
+     */
+    private static byte[] abi() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            CodeSource codeSource = MappingClassCache.class.getProtectionDomain().getCodeSource();
+            Path path = codeSource == null ? null : Paths.get(codeSource.getLocation().toURI());
+            if (path == null) {
+                LOG.warn("No code source for {}, compiled classes will not be reused", MappingClassCache.class);
+                digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            else if (Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    digest.update(path.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '\n');
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            else {
+                try (InputStream in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(path)), digest)) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) >= 0) {
+                        // only digesting
+                    }
+                }
+            }
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException | URISyntaxException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ScriptClasses compile(String code, String scriptName, GroovyClassLoader loader) {
+        CompilationUnit unit = new CompilationUnit(new CompilerConfiguration(), null, loader);
+        unit.addSource(scriptName, code);
+        unit.compile(Phases.CLASS_GENERATION);
+        String scriptClassName = scriptName.endsWith(".groovy") ?
+                scriptName.substring(0, scriptName.length() - ".groovy".length()) : scriptName;
+        Map<String, byte[]> classFiles = new LinkedHashMap<>();
+        for (GroovyClass groovyClass : unit.getClasses()) {
+            classFiles.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        if (!classFiles.containsKey(scriptClassName)) {
+            scriptClassName = classFiles.keySet().iterator().next();
+        }
+        return new ScriptClasses(scriptClassName, classFiles);
+    }
+
+    private static ScriptClasses read(File file) {
+        if (!file.exists()) return null;
+        // no count or length read from the file can be more than its size
+        long size = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT) throw new IOException("Unknown format");
+            String scriptClassName = in.readUTF();
+            int count = checkedLength(in.readInt(), size);
+            Map<String, byte[]> classFiles = new LinkedHashMap<>();
+            for (int walk = 0; walk < count; walk++) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[checkedLength(in.readInt(), size)];
+                in.readFully(bytes);
+                classFiles.put(name, bytes);
+            }
+            return new ScriptClasses(scriptClassName, classFiles);
+        }
+        catch (IOException e) {
+            LOG.warn("Unable to read compiled classes from {}, compiling again", file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private static int checkedLength(int length, long size) throws IOException {
+        if (length < 0 || length > size) throw new IOException("Corrupt length " + length);
+        return length;
+    }
+
+    private void write(File file, ScriptClasses classes) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            LOG.warn("Unable to create {} for compiled classes", dir);
+            return;
+        }
+        File inProgress = new File(dir, file.getName() + "." + Thread.currentThread().getId() + INPROGRESS_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(inProgress)))) {
+            out.writeInt(FORMAT);
+            out.writeUTF(classes.scriptClassName);
+            out.writeInt(classes.classFiles.size());
+            for (Map.Entry<String, byte[]> entry : classes.classFiles.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("Unable to write compiled classes to {}", inProgress, e);
+            inProgress.delete();
+            return;
+        }
+        if (!inProgress.renameTo(file)) {
+            inProgress.delete();
+            return;
+        }
+        removeLeastRecentlyUsed();
+    }
+
+    private void removeLeastRecentlyUsed() {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (entries == null || entries.length <= MAX_ENTRIES) return;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int walk = 0; walk < entries.length - MAX_ENTRIES; walk++) {
+            entries[walk].delete();
+        }
+    }
+
+    private static class ScriptClasses {
+        final String scriptClassName;
+        final Map<String, byte[]> classFiles;
+
+        ScriptClasses(String scriptClassName, Map<String, byte[]> classFiles) {
+            this.scriptClassName = scriptClassName;
+            this.classFiles = classFiles;
+        }
+    }
+
+    /**
+     * Defines the classes of one script. These are looked for here before asking the parent,
+     * since the parent may have a class of the same name from another compilation.
+     */
+
+    private static class ScriptClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classFiles;
+
+        ScriptClassLoader(ClassLoader parent, Map<String, byte[]> classFiles) {
+            super(parent);
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!classFiles.containsKey(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    byte[] bytes = classFiles.get(name);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) resolveClass(loaded);
+                return loaded;
+            }
+        }
+    }
+}
@@ -81,7 +81,7 @@ public class MetadataRecord {
         if (groovyNode.text != null && pattern.matcher(groovyNode.text).find()) {
             return true;
         }
-        for (GroovyNode child : groovyNode.children) {
+        for (GroovyNode child : groovyNode.getChildren()) {
             if (checkFor(child, pattern)) {
                 return true;
             }
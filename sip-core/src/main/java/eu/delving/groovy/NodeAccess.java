@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.lang.Closure;
+import groovy.util.NodeList;
+import org.codehaus.groovy.runtime.typehandling.DefaultTypeTransformation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Statically typed navigation of the input for generated mapping code, doing what
+ * property access on a GroovyNode and the list operators of the MappingCategory do,
+ * but as plain method calls instead of going through the meta class and the category.
+ * <p/>
+ * The CodeGenerator uses these when generating with static navigation, for the node
+ * mappings that have no code of their own.
+ *
+ */
+
+public final class NodeAccess {
+
+    private NodeAccess() {
+    }
+
+    /**
+     * @return the children with the given name, as node.name would, of the node or of
+     * every node in a list of them, such as the facts
+     */
+    public static List<GroovyNode> children(Object node, String name) {
+        if (node instanceof GroovyNode) {
+            return ((GroovyNode) node).getByName(name);
+        }
+        List<GroovyNode> answer = new NodeList();
+        for (Object member : (List<?>) node) {
+            answer.addAll(children(member, name));
+        }
+        return answer;
+    }
+
+    /**
+     * @return the values of the attribute, as node['@name'] would, of the node or of
+     * every node in a list of them
+     */
+    public static List<String> attribute(Object node, String name) {
+        List<String> answer = new ArrayList<>(1);
+        if (node instanceof GroovyNode) {
+            String value = ((GroovyNode) node).attributes().get(name);
+            if (value != null) answer.add(value);
+            return answer;
+        }
+        for (Object member : (List<?>) node) {
+            answer.addAll(attribute(member, name));
+        }
+        return answer;
+    }
+
+    /**
+     * Call the closure for each member of the list, collecting what it returns, as list * closure does.
+     */
+    public static List<Object> all(List<?> list, Closure<?> closure) {
+        List<?> members = flatten(list);
+        List<Object> output = new ArrayList<>(members.size());
+        for (Object member : members) {
+            Object returnValue = closure.call(member);
+            if (!DefaultTypeTransformation.castToBoolean(returnValue)) continue;
+            if (returnValue instanceof Object[]) {
+                for (Object item : (Object[]) returnValue) output.add(item);
+            }
+            else if (returnValue instanceof List) {
+                output.addAll((List<?>) returnValue);
+            }
+            else if (returnValue instanceof String) {
+                output.add(returnValue);
+            }
+            else if (!OutputTreeBuilder.isOutput(returnValue)) {
+                output.add(returnValue.toString());
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Call the closure for the first member of the list only, as list ** closure does.
+     */
+    public static Object first(List<?> list, Closure<?> closure) {
+        List<?> members = flatten(list);
+        if (!members.isEmpty()) closure.call(members.get(0));
+        return null;
+    }
+
+    /**
+     * Call the closure once with the whole list, as list >> closure does.
+     */
+    public static Object asArray(List<?> list, Closure<?> closure) {
+        closure.call(flatten(list));
+        return null;
+    }
+
+    /**
+     * Split the text of the nodes at the delimiter into separate nodes, as list * delimiter does.
+     */
+    public static List<GroovyNode> split(List<?> list, String delimiter) {
+        String quotedDelimiter = Pattern.quote(delimiter);
+        List<?> members = flatten(list);
+        List<GroovyNode> splitNodes = new ArrayList<>(members.size());
+        for (Object member : members) {
+            GroovyNode node = (GroovyNode) member;
+            if (node == null || node.text == null) continue;
+            if (node.text.contains(delimiter)) {
+                for (String segment : node.text.split(quotedDelimiter)) {
+                    if (segment.trim().isEmpty()) continue;
+                    splitNodes.add(new GroovyNode(node.parent(), node.qName(), node.attributes(), segment));
+                }
+            }
+            else {
+                splitNodes.add(node);
+            }
+        }
+        return splitNodes;
+    }
+
+    private static List<?> flatten(List<?> list) {
+        for (Object member : list) {
+            if (member instanceof List) {
+                List<Object> flattened = new NodeList(list.size());
+                flatten(list, flattened);
+                return flattened;
+            }
+        }
+        return list;
+    }
+
+    private static void flatten(List<?> list, List<Object> flattened) {
+        for (Object member : list) {
+            if (member instanceof List) {
+                flatten((List<?>) member, flattened);
+            }
+            else {
+                flattened.add(member);
+            }
+        }
+    }
+}
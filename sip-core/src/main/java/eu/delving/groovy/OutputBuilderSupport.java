@@ -0,0 +1,347 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.RecDef;
+import groovy.lang.Closure;
+import groovy.lang.GString;
+import groovy.util.BuilderSupport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * What the builders of mapping output have in common: closures given as attribute values or
+ * contents are executed, a list of values makes as many elements, names are resolved against
+ * the namespaces of the record definition, and xml:lang values are checked.
+ * <p/>
+ * The subclasses decide what an element is, how it gets attributes and text, and how the
+ * elements of nested calls are put together.
+ *
+ * @param <E> the type of element the builder makes
+ */
+
+public abstract class OutputBuilderSupport<E> extends BuilderSupport {
+    public static final String CDATA_BEFORE = "<![CDATA[";
+    public static final String CDATA_AFTER = "]]>";
+    static final String SCHEMA_LOCATION_ATTR = "xsi:schemaLocation";
+
+    /**
+     * BCP 47 language tag pattern.
+     * Matches patterns like: en, nl, en-US, zh-Hans, de-AT, pt-BR, sr-Latn-RS
+     * Based on RFC 5646: primary language (2-3 chars), optional script (4 chars),
+     * optional region (2 chars or 3 digits), and optional variants/extensions.
+     */
+    private static final Pattern BCP47_PATTERN = Pattern.compile(
+        "^[a-zA-Z]{2,3}(-[a-zA-Z]{4})?(-[a-zA-Z]{2}|-[0-9]{3})?(-[a-zA-Z0-9]{2,8})*$"
+    );
+
+    final RecDef recDef;
+    final Map<String, RecDef.Namespace> namespaces;
+
+    OutputBuilderSupport(RecDef recDef) {
+        this.recDef = recDef;
+        this.namespaces = recDef.getNamespaceMap();
+        if (!recDef.elementFormDefaultQualified) {
+            namespaces.remove(recDef.prefix);
+        }
+    }
+
+    /**
+     * @return true if the value is an element made by a builder, rather than text
+     */
+    abstract boolean isElement(Object value);
+
+    abstract void setAttribute(E element, String uri, String qualifiedName, String value);
+
+    abstract void addText(E element, String text, boolean cdata);
+
+    @Override
+    protected void setParent(Object parent, Object child) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object createNode(Object name, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object createNode(Object name, Map attributes, Object value) {
+        ElementFactory elementFactory = new ElementFactory(name.toString(), attributes, value);
+        return elementFactory.createElements();
+    }
+
+    @Override
+    protected Object createNode(Object name, Map attributes) {
+        return createNode(name, attributes, null);
+    }
+
+    <T> T firstInstanceOf(Class<T> type, Object... objects) {
+        for (Object obj : objects) {
+            if (obj == null) continue;
+            if (type.isAssignableFrom(obj.getClass())) return (T) obj;
+        }
+        return null;
+    }
+
+    /**
+     * @return the schema location attribute value for the namespaces with a schema, or null if there are none
+     */
+    String schemaLocation() {
+        StringBuilder schemaLocation = new StringBuilder();
+        for (RecDef.Namespace namespace : namespaces.values()) {
+            if (namespace.schema == null) continue;
+            if (schemaLocation.length() > 0) schemaLocation.append(' ');
+            schemaLocation.append(namespace.uri).append(' ').append(namespace.schema);
+        }
+        return schemaLocation.length() > 0 ? schemaLocation.toString() : null;
+    }
+
+    TagValue tagValue(String name, boolean attribute) {
+        int colon = name.indexOf(':');
+        if (colon > 0) {
+            String prefix = name.substring(0, colon);
+            RecDef.Namespace namespace = namespaces.get(prefix);
+            if (namespace == null) {
+                throw new RuntimeException("No namespace for " + prefix);
+            }
+            return new TagValue(prefix, namespace.uri, name.substring(colon + 1), isNamespaceAdded(prefix, attribute));
+        } else {
+            return new TagValue(null, null, name, isNamespaceAdded(null, attribute));
+        }
+    }
+
+    private boolean isNamespaceAdded(String prefix, boolean attribute) {
+        if (prefix != null && !prefix.equals(recDef.prefix)) return true;
+        if (attribute) {
+            return recDef.attributeFormDefaultQualified;
+        } else {
+            return recDef.elementFormDefaultQualified;
+        }
+    }
+
+    private void addText(E element, String text) {
+        while (!text.isEmpty()) {
+            int before = text.indexOf(CDATA_BEFORE);
+            if (before < 0) {
+                addText(element, text, false);
+                break; // finished
+            }
+            if (before > 0) {
+                addText(element, text.substring(0, before), false);
+                text = text.substring(before);
+            } else { // starts with CDATA
+                text = text.substring(CDATA_BEFORE.length());
+                int after = text.indexOf(CDATA_AFTER);
+                if (after < 0) throw new RuntimeException("No CDATA terminator");
+                String cdata = text.substring(0, after);
+                addText(element, cdata, true);
+                text = text.substring(cdata.length() + CDATA_AFTER.length());
+            }
+        }
+    }
+
+    private class ElementFactory {
+
+        final String name;
+        final Map<String, Object> attributes;
+        final Object contents;
+        final int elementsRequired;
+
+        private ElementFactory(String name, Map<String, Object> attributes, Object contents) {
+            this.name = name;
+            this.attributes = resolveAttributes(attributes);
+            this.contents = resolveValue(contents);
+            this.elementsRequired = calcElementsRequired(this.attributes, this.contents);
+        }
+
+        private Map<String, Object> resolveAttributes(Map<String, Object> attributes) {
+            Map<String, Object> resolvedAttributes = new HashMap<>();
+            if (attributes != null) {
+                for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                    resolvedAttributes.put(attribute.getKey(), resolveValue(attribute.getValue()));
+                }
+            }
+            return resolvedAttributes;
+        }
+
+        private Object resolveValue(Object value) {
+            if (value instanceof Closure) {
+                Closure closure = (Closure) value;
+                closure.setDelegate(OutputBuilderSupport.this);
+                return closure.call();
+            } else if (value instanceof List) {
+                List values = (List) value;
+                List resolvedValues = new ArrayList(values.size());
+                for (Object item : values) {
+                    resolvedValues.add(resolveValue(item));
+                }
+                return resolvedValues;
+            }
+            return value;
+        }
+
+        private int calcElementsRequired(Map<String, Object> attributes, Object contents) {
+            int elementsRequired = 0;
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                checkAttributeName(attribute.getKey());
+                Object attributeValue = attribute.getValue();
+                if (attributeValue instanceof List) {
+                    elementsRequired = Math.max(elementsRequired, ((List<?>) attributeValue).size());
+                } else {
+                    elementsRequired = Math.max(elementsRequired, 1);
+                }
+            }
+            if (contents instanceof List) {
+                int textContentCount = 0;
+                for (Object value : (List) contents) {
+                    if (!isElement(value)) textContentCount++;
+                }
+                elementsRequired = Math.max(elementsRequired, textContentCount);
+            } else if (contents != null) {
+                elementsRequired = Math.max(elementsRequired, 1);
+            }
+            return Math.max(1, elementsRequired);
+        }
+
+        private Object extractValue(Object value, int index) {
+            if (value == null) return null;
+            if (value instanceof List) {
+                List values = (List) value;
+                if (values.isEmpty()) return null;
+                if (index >= values.size()) return values.get(0);
+                return values.get(index);
+            }
+            return value;
+        }
+
+        public List<E> createElements() {
+            List<E> elements = new ArrayList<>(elementsRequired);
+            for (int i = 0; i < elementsRequired; i++) {
+                E element = (E) createNode(name);
+                String xmlLangValue = null;
+                for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                    Object attributeValue = extractValue(attribute.getValue(), i);
+                    if (attributeValue == null) continue;
+                    String attrValueStr = attributeValue.toString();
+                    validateXmlLang(name, attribute.getKey(), attrValueStr);
+                    if ("xml:lang".equals(attribute.getKey())) {
+                        xmlLangValue = attrValueStr;
+                    }
+                    TagValue tagValue = tagValue(attribute.getKey(), true);
+                    setAttribute(
+                            element,
+                            tagValue.namespaced ? tagValue.uri : null,
+                            tagValue.namespaced ? tagValue.toString() : tagValue.localPart,
+                            attrValueStr
+                    );
+                }
+                Object contentValue = extractValue(contents, i);
+                if (contentValue instanceof String || contentValue instanceof GString) {
+                    addText(element, contentValue.toString());
+                }
+                // elements with xml:lang must have content
+                validateXmlLangContent(name, xmlLangValue, contentValue);
+                elements.add(element);
+            }
+            return elements;
+        }
+    }
+
+    static void checkAttributeName(String attrName) {
+        if ("xmlns".equals(attrName)) throw new RuntimeException("Can't handle xmlns attribute");
+        if (attrName.startsWith("xmlns:")) throw new RuntimeException("Can't handle attribute xmlns:*");
+    }
+
+    /**
+     * Validates xml:lang attribute values against BCP 47 format.
+     * @param name the element name
+     * @param attrName the attribute name
+     * @param attrValue the attribute value to validate
+     * @throws LanguageTagException if xml:lang value is invalid
+     */
+    static void validateXmlLang(String name, String attrName, String attrValue) {
+        if ("xml:lang".equals(attrName)) {
+            if (attrValue == null || attrValue.isEmpty()) {
+                throw new LanguageTagException(
+                    LanguageTagException.Type.INVALID_FORMAT,
+                    name,
+                    attrValue,
+                    "Invalid xml:lang value: empty or null - must be a valid BCP 47 language tag (e.g., 'en', 'nl', 'en-US')"
+                );
+            }
+            if (!BCP47_PATTERN.matcher(attrValue).matches()) {
+                throw new LanguageTagException(
+                    LanguageTagException.Type.INVALID_FORMAT,
+                    name,
+                    attrValue,
+                    String.format(
+                        "Invalid xml:lang value '%s' - must be a valid BCP 47 language tag (e.g., 'en', 'nl', 'en-US')",
+                        attrValue.length() > 50 ? attrValue.substring(0, 50) + "..." : attrValue
+                    )
+                );
+            }
+        }
+    }
+
+    /**
+     * Validates that an element with xml:lang has non-empty content.
+     * @throws LanguageTagException if the content is missing
+     */
+    static void validateXmlLangContent(String name, String xmlLangValue, Object contentValue) {
+        if (xmlLangValue != null) {
+            boolean hasContent = contentValue != null &&
+                (contentValue instanceof String || contentValue instanceof GString) &&
+                !contentValue.toString().trim().isEmpty();
+
+            if (!hasContent) {
+                throw new LanguageTagException(
+                    LanguageTagException.Type.EMPTY_CONTENT,
+                    name,
+                    xmlLangValue,
+                    String.format(
+                        "Element '%s' has xml:lang='%s' but no content - either add content or remove the language tag",
+                        name, xmlLangValue
+                    )
+                );
+            }
+        }
+    }
+
+    static class TagValue {
+        final String prefix;
+        final String uri;
+        final String localPart;
+        final boolean namespaced;
+
+        TagValue(String prefix, String uri, String localPart, boolean namespaced) {
+            this.prefix = prefix;
+            this.uri = uri;
+            this.localPart = localPart;
+            this.namespaced = namespaced;
+        }
+
+        public String toString() {
+            return prefix == null ? localPart : prefix + ":" + localPart;
+        }
+    }
+}
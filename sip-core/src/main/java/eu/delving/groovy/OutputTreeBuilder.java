@@ -0,0 +1,229 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.XMLToolFactory;
+import eu.delving.metadata.RecDef;
+import groovy.lang.Closure;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An output builder for the generated mapping code which does what the DOMBuilder does, but
+ * records the elements in a light tree of its own instead of in a DOM document. Empty
+ * elements and whitespace text are left out as each element is closed, so there is no
+ * pruning afterwards, and the result is only turned into a DOM when something needs one.
+ * The XmlSerializer can write the tree directly.
+ * <p/>
+ * The elements of a builder call become the children of the first element of the call around
+ * it, ahead of its text, and the first element created gets the schema location, all as with
+ * the DOMBuilder, so the output is the same as a stripped DOMBuilder document.
+ */
+
+public class OutputTreeBuilder extends OutputBuilderSupport<OutputTreeBuilder.OutputElement> {
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            return XMLToolFactory.documentBuilderFactory().newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    });
+    private final Deque<List<OutputElement>> openCalls = new ArrayDeque<>();
+    private boolean started;
+
+    public static OutputTreeBuilder createFor(RecDef recDef) {
+        return new OutputTreeBuilder(recDef);
+    }
+
+    private OutputTreeBuilder(RecDef recDef) {
+        super(recDef);
+    }
+
+    /**
+     * @return the output of the mapping script as a DOM element, as the stripped DOMBuilder
+     * output would have been, or the stripped node if the script made its own DOM
+     */
+    public static Node toNode(Object output) {
+        if (output instanceof Node) {
+            return Utils.stripEmptyElements(output);
+        }
+        Document document = DOCUMENT_BUILDER.get().newDocument();
+        Element element = ((OutputElement) output).toElement(document);
+        document.appendChild(element);
+        return element;
+    }
+
+    @Override
+    protected Object createNode(Object name) {
+        OutputElement element = new OutputElement(tagValue(name.toString(), false));
+        if (!started) {
+            started = true;
+            if (element.namespaced) {
+                String schemaLocation = schemaLocation();
+                if (schemaLocation != null) {
+                    element.setAttribute(RecDef.XSI_NAMESPACE.uri, SCHEMA_LOCATION_ATTR, schemaLocation);
+                }
+            }
+        }
+        return element;
+    }
+
+    @Override
+    boolean isElement(Object value) {
+        return isOutput(value);
+    }
+
+    @Override
+    void setAttribute(OutputElement element, String uri, String qualifiedName, String value) {
+        element.setAttribute(uri, qualifiedName, value);
+    }
+
+    @Override
+    void addText(OutputElement element, String text, boolean cdata) {
+        if (text.trim().isEmpty()) return;
+        element.children.add(new Text(text, cdata));
+    }
+
+    @Override
+    protected Object doInvokeMethod(String methodName, Object name, Object argsObj) {
+        Object[] args = (Object[]) argsObj;
+        Closure contentClosure = firstInstanceOf(Closure.class, args);
+        Map<String, Object> attributes = firstInstanceOf(Map.class, args);
+
+        openCalls.push(new ArrayList<>());
+        List<OutputElement> elements = (List<OutputElement>) createNode(methodName, attributes, contentClosure);
+        List<OutputElement> children = openCalls.pop();
+        elements.get(0).adopt(children);
+        if (!openCalls.isEmpty()) openCalls.peek().addAll(elements);
+
+        if (elements.size() == 1) return elements.get(0);
+        return elements;
+    }
+
+    /**
+     * @return true if the value is an element made by this builder or the DOMBuilder, rather than text
+     */
+    public static boolean isOutput(Object value) {
+        return value instanceof OutputElement || value instanceof Node;
+    }
+
+    /**
+     * An element of the output, with its attributes kept in name order as a DOM element
+     * keeps them, and its children being other elements and text.
+     */
+
+    public static class OutputElement {
+        final boolean namespaced;
+        final String uri;
+        final String prefix;
+        final String localPart;
+        final Map<String, Attribute> attributes = new TreeMap<>();
+        final List<Object> children = new ArrayList<>(2);
+
+        private OutputElement(TagValue tagValue) {
+            this.namespaced = tagValue.namespaced;
+            this.uri = tagValue.uri;
+            this.prefix = tagValue.prefix;
+            this.localPart = tagValue.localPart;
+        }
+
+        public String getQualifiedName() {
+            return prefix == null ? localPart : prefix + ":" + localPart;
+        }
+
+        public boolean isEmpty() {
+            return children.isEmpty() && attributes.isEmpty();
+        }
+
+        private void setAttribute(String uri, String qualifiedName, String value) {
+            attributes.put(qualifiedName, new Attribute(uri, qualifiedName, value));
+        }
+
+        private void adopt(List<OutputElement> elements) {
+            if (elements.isEmpty()) return;
+            List<Object> kept = new ArrayList<>(elements.size() + children.size());
+            for (OutputElement element : elements) {
+                if (!element.isEmpty()) kept.add(element);
+            }
+            kept.addAll(children);
+            children.clear();
+            children.addAll(kept);
+        }
+
+        public Element toElement(Document document) {
+            Element element = namespaced ?
+                    document.createElementNS(uri, getQualifiedName()) :
+                    document.createElement(localPart);
+            for (Attribute attribute : attributes.values()) {
+                element.setAttributeNS(attribute.uri, attribute.qualifiedName, attribute.value);
+            }
+            for (Object child : children) {
+                if (child instanceof OutputElement) {
+                    element.appendChild(((OutputElement) child).toElement(document));
+                } else {
+                    Text text = (Text) child;
+                    element.appendChild(text.cdata ?
+                            document.createCDATASection(text.value) :
+                            document.createTextNode(text.value));
+                }
+            }
+            return element;
+        }
+
+        public String toString() {
+            return getQualifiedName();
+        }
+    }
+
+    static class Attribute {
+        final String uri;
+        final String prefix;
+        final String localName;
+        final String qualifiedName;
+        final String value;
+
+        Attribute(String uri, String qualifiedName, String value) {
+            int colon = qualifiedName.indexOf(':');
+            this.uri = uri;
+            this.prefix = colon > 0 ? qualifiedName.substring(0, colon) : null;
+            this.localName = colon > 0 ? qualifiedName.substring(colon + 1) : qualifiedName;
+            this.qualifiedName = qualifiedName;
+            this.value = value;
+        }
+    }
+
+    static class Text {
+        final String value;
+        final boolean cdata;
+
+        Text(String value, boolean cdata) {
+            this.value = value;
+            this.cdata = cdata;
+        }
+    }
+}
@@ -17,21 +17,222 @@
 
 package eu.delving.groovy;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The compiled regular expressions used by the mapping scripts, shared by all engines.
+ * <p/>
+ * Lookups do not lock. The number of patterns is bounded, since mapping code can build its
+ * expressions from the input, and when there are too many the ones not used since the last
+ * sweep are removed, giving the others a second chance (the clock algorithm).
+ * <p/>
+ * The literal expressions given to split, replaceAll and matches in the mapping code can be
+ * compiled in advance with precompileLiterals.
+ *
+ */
 
 public class PatternCache {
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    // the string literal given as first argument to one of the methods that use this cache
+    private static final Pattern LITERAL_ARGUMENT = Pattern.compile(
+            "\\.(?:split|replaceAll|matches)\\(\\s*(?:'((?:[^'\\\\\\n]|\\\\.)*)'|\"((?:[^\"\\\\$\\n]|\\\\.)*)\")");
+    private static final Map<String, Entry> patterns = new ConcurrentHashMap<>(256);
+    private static final AtomicBoolean sweeping = new AtomicBoolean();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+    private static volatile int maxSize = DEFAULT_MAX_SIZE;
 
-    private static Map<String, Pattern> patternCache = Collections.synchronizedMap(new HashMap<String, Pattern>(200));
+    private static class Entry {
+        final Pattern pattern;
+        volatile boolean used;
+
+        Entry(Pattern pattern, boolean used) {
+            this.pattern = pattern;
+            this.used = used;
+        }
+    }
 
     public static Pattern getPattern(String regex) {
-        Pattern pattern = patternCache.get(regex);
-        if (pattern == null) {
-            pattern = Pattern.compile(regex);
-            patternCache.put(regex, pattern);
+        Entry entry = patterns.get(regex);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.used) entry.used = true;
+            return entry.pattern;
         }
+        misses.increment();
+        Pattern pattern = Pattern.compile(regex);
+        add(regex, pattern, false);
         return pattern;
     }
+
+    /**
+     * Compile the literal expressions which the code gives to split, replaceAll and matches,
+     * so the engines find them ready. Literals which are not valid expressions are skipped,
+     * to fail when the script actually uses them.
+     *
+     * @param code the mapping code
+     * @return the number of expressions compiled
+     */
+    public static int precompileLiterals(String code) {
+        int count = 0;
+        Matcher matcher = LITERAL_ARGUMENT.matcher(code);
+        while (matcher.find()) {
+            String literal = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            String regex = unescape(literal);
+            if (regex == null || patterns.containsKey(regex)) continue;
+            try {
+                add(regex, Pattern.compile(regex), true);
+                count++;
+            }
+            catch (PatternSyntaxException e) {
+                // the script will report it
+            }
+        }
+        return count;
+    }
+
+    public static void setMaxSize(int maxSize) {
+        PatternCache.maxSize = maxSize;
+        sweep();
+    }
+
+    public static int size() {
+        return patterns.size();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+
+    public static String statistics() {
+        return snapshot().toString();
+    }
+
+    public static Statistics snapshot() {
+        return new Statistics(getHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * The counters of the cache at one moment. The cache is shared by everything running in
+     * the JVM, so a run reports the difference between a snapshot at its start and one at its end.
+     */
+    public static class Statistics {
+        public final long hits, misses, evictions;
+
+        private Statistics(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public Statistics since(Statistics start) {
+            return new Statistics(hits - start.hits, misses - start.misses, evictions - start.evictions);
+        }
+
+        public boolean isEmpty() {
+            return hits + misses == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Patterns: %d of %d kept, %d hits, %d misses, %d evictions",
+                    patterns.size(), maxSize, hits, misses, evictions);
+        }
+    }
+
+    public static void clear() {
+        patterns.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private static void add(String regex, Pattern pattern, boolean used) {
+        if (patterns.putIfAbsent(regex, new Entry(pattern, used)) == null && patterns.size() > maxSize) {
+            sweep();
+        }
+    }
+
+    private static void sweep() {
+        // one thread sweeps while the others carry on
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            while (patterns.size() > maxSize) {
+                Iterator<Entry> walk = patterns.values().iterator();
+                while (walk.hasNext() && patterns.size() > maxSize) {
+                    Entry entry = walk.next();
+                    if (entry.used) {
+                        entry.used = false;
+                    }
+                    else {
+                        walk.remove();
+                        evictions.increment();
+                    }
+                }
+            }
+        }
+        finally {
+            sweeping.set(false);
+        }
+    }
+
+    // the string value of the literal, or null when it is not a valid Groovy string
+    private static String unescape(String literal) {
+        if (literal.indexOf('\\') < 0) return literal;
+        StringBuilder out = new StringBuilder(literal.length());
+        for (int walk = 0; walk < literal.length(); walk++) {
+            char ch = literal.charAt(walk);
+            if (ch == '\\' && walk + 1 < literal.length()) {
+                char next = literal.charAt(++walk);
+                switch (next) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int digit = 0; digit < 4; digit++) {
+                            int value = ++walk < literal.length() ? Character.digit(literal.charAt(walk), 16) : -1;
+                            if (value < 0) return null;
+                            code = code * 16 + value;
+                        }
+                        out.append((char) code);
+                        break;
+                    default:
+                        out.append(next);
+                }
+            }
+            else {
+                out.append(ch);
+            }
+        }
+        return out.toString();
+    }
 }
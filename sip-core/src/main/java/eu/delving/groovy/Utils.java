@@ -56,15 +56,58 @@ public class Utils {
 
     public static SimpleBindings bindingsFor(final Map<String, String> facts,
             final RecDef recDef, GroovyNode rootNode, Map<String, Map<String, OptList.Opt>> valueOptLookup) {
-        final SimpleBindings bindings = new SimpleBindings();
-        final ScriptBinding ourScriptIO = new ScriptBinding();
-        bindings.put("WORLD", ourScriptIO);
-
-        ourScriptIO._facts = initFactsNode(facts);
-        ourScriptIO._optLookup = valueOptLookup;
-        ourScriptIO.output = DOMBuilder.createFor(recDef);
-        ourScriptIO.input = Collections.singletonList(rootNode);
-        return bindings;
+        return new BindingsTemplate(facts, recDef, valueOptLookup).bindingsFor(rootNode);
+    }
+
+    /**
+     * The bindings which are the same for every record of a mapping, prepared once so that
+     * only the input and the output builder are new for each record. The output builder is
+     * a DOMBuilder unless another one is given. Every thread gets a facts node of its own,
+     * shared by the records it maps, and replaced by a fresh one for a record if mapping code
+     * has added to it, such as a delimiter split of a fact does.
+     */
+    public static class BindingsTemplate {
+        private final Map<String, String> facts;
+        private final RecDef recDef;
+        private final Map<String, Map<String, OptList.Opt>> optLookup;
+        private final ThreadLocal<List<GroovyNode>> factsNodes;
+        private final int factCount;
+
+        public BindingsTemplate(Map<String, String> facts, RecDef recDef,
+                Map<String, Map<String, OptList.Opt>> optLookup) {
+            this.facts = facts;
+            this.recDef = recDef;
+            this.optLookup = optLookup;
+            this.factsNodes = ThreadLocal.withInitial(() -> initFactsNode(facts));
+            this.factCount = facts.size();
+        }
+
+        public SimpleBindings bindingsFor(GroovyNode rootNode) {
+            return bindingsFor(rootNode, DOMBuilder.createFor(recDef));
+        }
+
+        public SimpleBindings bindingsFor(GroovyNode rootNode, Object output) {
+            final SimpleBindings bindings = new SimpleBindings();
+            bindings.put("WORLD", worldFor(rootNode, output));
+            return bindings;
+        }
+
+        /**
+         * @return the WORLD that the mapping script sees for the record
+         */
+        public ScriptBinding worldFor(GroovyNode rootNode, Object output) {
+            final ScriptBinding ourScriptIO = new ScriptBinding();
+            List<GroovyNode> factsNode = factsNodes.get();
+            if (factsNode.get(0).getChildren().size() != factCount) {
+                factsNode = initFactsNode(facts);
+                factsNodes.set(factsNode);
+            }
+            ourScriptIO._facts = factsNode;
+            ourScriptIO._optLookup = optLookup;
+            ourScriptIO.output = output;
+            ourScriptIO.input = Collections.singletonList(rootNode);
+            return ourScriptIO;
+        }
     }
 
     private static void stripEmpty(Node node) {
@@ -95,7 +138,28 @@ public class Utils {
 
     public static String stripNonPrinting(String xmlString) {
         // This keeps all printable characters including UTF-8 chars, only removes
-        // control chars
-        return xmlString.replaceAll("[\\p{Cc}&&[^\r\n\t]]", "");
+        // control chars (same as replaceAll("[\\p{Cc}&&[^\r\n\t]]", "")), and
+        // returns the string itself when there is nothing to remove
+        int length = xmlString.length();
+        int walk = 0;
+        while (walk < length && !isNonPrinting(xmlString.charAt(walk))) {
+            walk++;
+        }
+        if (walk == length) {
+            return xmlString;
+        }
+        StringBuilder out = new StringBuilder(length - 1);
+        out.append(xmlString, 0, walk);
+        for (walk++; walk < length; walk++) {
+            char c = xmlString.charAt(walk);
+            if (!isNonPrinting(c)) {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isNonPrinting(char c) {
+        return (c < 0x20 && c != '\r' && c != '\n' && c != '\t') || (c >= 0x7F && c <= 0x9F);
     }
 }
@@ -140,6 +140,126 @@ public class XmlSerializer {
         }
     }
 
+    /**
+     * Write the output of a mapping kept by the OutputTreeBuilder, exactly as toXml(node, true)
+     * writes the same output as a DOM, without making the DOM first.
+     */
+    public String toXml(OutputTreeBuilder.OutputElement element) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            OutputStreamWriter writer = new OutputStreamWriter(outputStream, "UTF-8");
+            writeXml(writer, element);
+            return outputStream.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void writeXml(OutputStreamWriter writer, OutputTreeBuilder.OutputElement element) {
+        try {
+            Map<String, String> namespaces = new TreeMap<String, String>();
+            gatherNamespaces(element, namespaces);
+            List<Namespace> nslist = new ArrayList<Namespace>();
+            for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+                if (entry.getValue().trim().isEmpty()) continue;
+                nslist.add(eventFactory.createNamespace(entry.getKey(), entry.getValue()));
+            }
+            XMLEventWriter out = outputFactory.createXMLEventWriter(writer);
+            out.add(eventFactory.createStartDocument());
+            out.add(eventFactory.createCharacters("\n"));
+            String prefix = getPrefix(element);
+            String uri = getNamespaceURI(element);
+            String localName = element.localPart;
+            // Use rdf:RDF as root element for RDF/XML compatibility with Narthex
+            if ("RDF".equals(localName)) {
+                prefix = "rdf";
+                uri = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+            }
+            out.add(eventFactory.createStartElement(prefix, uri, localName, getAttributes(element).iterator(), nslist.iterator()));
+            out.add(eventFactory.createCharacters("\n"));
+            for (Object kid : element.children) {
+                if (kid instanceof OutputTreeBuilder.OutputElement) {
+                    elementToXml(out, (OutputTreeBuilder.OutputElement) kid, 1);
+                }
+            }
+            out.add(eventFactory.createEndElement(prefix, uri, localName));
+            out.add(eventFactory.createCharacters("\n"));
+            out.add(eventFactory.createEndDocument());
+            out.flush();
+        }
+        catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void elementToXml(XMLEventWriter out, OutputTreeBuilder.OutputElement element, int level) throws XMLStreamException {
+        if (!element.namespaced) return; // such elements have no local name in the DOM
+        String indentString = indentString(level);
+        out.add(eventFactory.createCharacters(indentString));
+        out.add(eventFactory.createStartElement(
+                getPrefix(element), getNamespaceURI(element), element.localPart, getAttributes(element).iterator(), null
+        ));
+        boolean elementHasSubelement = false;
+        for (Object kid : element.children) {
+            if (kid instanceof OutputTreeBuilder.OutputElement) {
+                elementHasSubelement = true;
+                break;
+            }
+        }
+        if (elementHasSubelement) out.add(eventFactory.createCharacters("\n"));
+        for (Object kid : element.children) {
+            if (kid instanceof OutputTreeBuilder.OutputElement) {
+                elementToXml(out, (OutputTreeBuilder.OutputElement) kid, level + 1);
+            }
+            else {
+                OutputTreeBuilder.Text text = (OutputTreeBuilder.Text) kid;
+                String value = Utils.stripNonPrinting(text.value);
+                out.add(text.cdata ? eventFactory.createCData(value) : eventFactory.createCharacters(value));
+            }
+        }
+        if (elementHasSubelement) out.add(eventFactory.createCharacters(indentString));
+        out.add(eventFactory.createEndElement(getPrefix(element), getNamespaceURI(element), element.localPart));
+        out.add(eventFactory.createCharacters("\n"));
+    }
+
+    private static String getPrefix(OutputTreeBuilder.OutputElement element) {
+        return element.namespaced && element.prefix != null ? element.prefix : "";
+    }
+
+    private static String getNamespaceURI(OutputTreeBuilder.OutputElement element) {
+        return element.namespaced && element.uri != null ? element.uri : "";
+    }
+
+    private List<Attribute> getAttributes(OutputTreeBuilder.OutputElement element) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (OutputTreeBuilder.Attribute attribute : element.attributes.values()) {
+            if (attribute.prefix == null) {
+                attributes.add(eventFactory.createAttribute(attribute.qualifiedName, attribute.value));
+            }
+            else {
+                attributes.add(eventFactory.createAttribute(
+                        attribute.prefix, attribute.uri, attribute.localName, attribute.value
+                ));
+            }
+        }
+        return attributes;
+    }
+
+    private void gatherNamespaces(OutputTreeBuilder.OutputElement element, Map<String, String> namespaces) {
+        if (element.namespaced && element.prefix != null && element.uri != null) {
+            namespaces.put(element.prefix, element.uri);
+        }
+        for (OutputTreeBuilder.Attribute attribute : element.attributes.values()) {
+            if (attribute.prefix == null) continue;
+            namespaces.put(attribute.prefix, attribute.uri);
+        }
+        for (Object kid : element.children) {
+            if (kid instanceof OutputTreeBuilder.OutputElement) {
+                gatherNamespaces((OutputTreeBuilder.OutputElement) kid, namespaces);
+            }
+        }
+    }
+
     private void nodeToXml(XMLEventWriter out, Node node, int level) throws XMLStreamException {
         boolean fromMapping = level > 0;
         if (node.getLocalName() == null) return;
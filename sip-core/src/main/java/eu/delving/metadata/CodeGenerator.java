@@ -32,6 +32,7 @@ public class CodeGenerator {
     private CodeOut codeOut = new CodeOut();
     private String prefixFirstBuilder = "outputNode = WORLD.output.";
     private boolean trace;
+    private boolean staticNavigation;
 
     public CodeGenerator(RecMapping recMapping) {
         this.recMapping = recMapping;
@@ -47,6 +48,16 @@ public class CodeGenerator {
         return this;
     }
 
+    /**
+     * Navigate the input with typed NodeAccess calls instead of dynamic property access
+     * and category operators, in the node mappings without code of their own. Node
+     * mappings with code keep the dynamic form, since that code may rely on it.
+     */
+    public CodeGenerator withStaticNavigation(boolean staticNavigation) {
+        this.staticNavigation = staticNavigation;
+        return this;
+    }
+
     public String toRecordMappingCode() {
         generate();
         return codeOut.toString();
@@ -204,6 +215,11 @@ public class CodeGenerator {
         codeOut.line("// Discarding:");
         codeOut.line("import eu.delving.groovy.DiscardRecordException");
         codeOut.line("import eu.delving.metadata.OptList");
+        codeOut.line("import groovy.transform.Field");
+        if (staticNavigation) {
+            codeOut.line("import eu.delving.groovy.GroovyNode");
+            codeOut.line("import eu.delving.groovy.NodeAccess");
+        }
         codeOut.line("def discard = { reason -> throw new DiscardRecordException(reason.toString()) }");
         codeOut.line("def discardIf = { thing, reason ->  if (thing) throw new DiscardRecordException(reason.toString()) }");
         codeOut.line("def discardIfNot = { thing, reason ->  if (!thing) throw new DiscardRecordException(reason.toString()) }");
@@ -371,10 +387,7 @@ public class CodeGenerator {
             }
             else {
                 trace();
-                codeOut.line_(
-                        "%s %s { %s ->",
-                        toLoopRef(path), operator.getCodeString(), param
-                );
+                codeOut.line_("%s", toLoopStart(nodeMapping, path, operator, param));
                 groovyParams.push(param);
                 toNodeMappingLoop(recDefNode, nodeMapping, path.withRootRemoved(), groovyParams);
                 groovyParams.pop();
@@ -589,10 +602,7 @@ public class CodeGenerator {
             boolean needLoop = !groovyParams.contains(param);
             if (needLoop) {
                 trace();
-                codeOut.line_(
-                        "%s %s { %s ->",
-                        toLoopRef(path), nodeMapping.getOperator().getCodeString(), param
-                );
+                codeOut.line_("%s", toLoopStart(nodeMapping, path, nodeMapping.getOperator(), param));
             }
             toInnerLoop(nodeMapping, path.withRootRemoved(), groovyParams);
             if (needLoop) codeOut._line("}");
@@ -669,17 +679,23 @@ public class CodeGenerator {
         int index = nodeMapping.getIndexWithinNode();
         if (nodeMapping.hasDictionary()) {
             if (optBox == null || optBox.role == CHILD) return;
-            codeOut.line_(String.format("def Dictionary%s = [", optBox.getDictionaryName(index)));
-            Iterator<Map.Entry<String, String>> walk = nodeMapping.dictionary.entrySet().iterator();
-            while (walk.hasNext()) {
-                Map.Entry<String, String> entry = walk.next();
-                codeOut.line(String.format("'''%s''':'''%s'''%s",
-                        sanitizeGroovy(entry.getKey()),
-                        sanitizeGroovy(entry.getValue()),
-                        walk.hasNext() ? "," : ""
-                ));
+            // a static field of the script class, so the map is built once rather than for every record
+            if (nodeMapping.dictionary.isEmpty()) {
+                codeOut.line("@Field static final Map Dictionary%s = Collections.emptyMap()", optBox.getDictionaryName(index));
+            }
+            else {
+                codeOut.line_("@Field static final Map Dictionary%s = Collections.unmodifiableMap([", optBox.getDictionaryName(index));
+                Iterator<Map.Entry<String, String>> walk = nodeMapping.dictionary.entrySet().iterator();
+                while (walk.hasNext()) {
+                    Map.Entry<String, String> entry = walk.next();
+                    codeOut.line(String.format("'''%s''':'''%s'''%s",
+                            sanitizeGroovy(entry.getKey()),
+                            sanitizeGroovy(entry.getValue()),
+                            walk.hasNext() ? "," : ""
+                    ));
+                }
+                codeOut._line("])");
             }
-            codeOut._line("]");
             codeOut.line_("def lookup%s = { value ->", optBox.getDictionaryName(index));
             codeOut.line("   if (!value) return null");
             codeOut.line("   String optKey = Dictionary%s[value.sanitize()]", optBox.getDictionaryName(index));
@@ -721,6 +737,41 @@ public class CodeGenerator {
         return expression.toString();
     }
 
+    private String toLoopStart(NodeMapping nodeMapping, Path path, Operator operator, String param) {
+        if (!isStatic(nodeMapping)) {
+            return String.format("%s %s { %s ->", toLoopRef(path), operator.getCodeString(), param);
+        }
+        String list = toStaticLoopRef(path);
+        String paramType = path.getTag(1).isAttribute() ? "String" : "GroovyNode";
+        switch (operator) {
+            case FIRST:
+                return String.format("NodeAccess.first(%s) { %s %s ->", list, paramType, param);
+            case AS_ARRAY:
+                return String.format("NodeAccess.asArray(%s) { %s ->", list, param);
+            case ALL:
+                return String.format("NodeAccess.all(%s) { %s %s ->", list, paramType, param);
+            default:
+                return String.format("NodeAccess.all(NodeAccess.split(%s, '%s')) { GroovyNode %s ->",
+                        list, operator.getDelimiter(), param);
+        }
+    }
+
+    private boolean isStatic(NodeMapping nodeMapping) {
+        if (!staticNavigation || nodeMapping.groovyCode != null || nodeMapping.hasMap()) return false;
+        if (editPath == null || editPath.isGeneratedCode() || nodeMapping.recDefNode == null) return true;
+        return editPath.getEditedCode(nodeMapping.recDefNode.getPath()) == null;
+    }
+
+    private String toStaticLoopRef(Path path) {
+        Tag outer = path.getTag(0);
+        Tag inner = path.getTag(1);
+        if (outer == null || inner == null) throw new RuntimeException("toStaticLoopRef called on " + path);
+        if (inner.isAttribute()) {
+            return String.format("NodeAccess.attribute(%s, '%s')", toGroovyIdentifier(outer), inner.toString());
+        }
+        return String.format("NodeAccess.children(%s, '%s')", toGroovyIdentifier(outer), tagToVariable(inner.toString()));
+    }
+
     private String toLoopRef(Path path) {
         Tag outer = path.getTag(0);
         Tag inner = path.getTag(1);
@@ -24,26 +24,35 @@ package eu.delving.metadata;
  */
 
 public enum Operator {
-    ALL("All Entries", "*"),
-    FIRST("First Entry", "**"),
-    COMMA_DELIM("Comma-Delimited", "* ', ' *"),
-    SEMI_DELIM("Semicolon-Delimited", "* '; ' *"),
-    SPACE_DELIM("Space-Delimited", "* ' ' *"),
-    PIPE_DELIM("Pipe-delimited", "* '|' * "),
-    AS_ARRAY("As-Array", ">>");
+    ALL("All Entries", "*", null),
+    FIRST("First Entry", "**", null),
+    COMMA_DELIM("Comma-Delimited", "* ', ' *", ", "),
+    SEMI_DELIM("Semicolon-Delimited", "* '; ' *", "; "),
+    SPACE_DELIM("Space-Delimited", "* ' ' *", " "),
+    PIPE_DELIM("Pipe-delimited", "* '|' * ", "|"),
+    AS_ARRAY("As-Array", ">>", null);
 
     private final String display;
     private final String codeString;
+    private final String delimiter;
 
-    private Operator(String display, String codeString) {
+    private Operator(String display, String codeString, String delimiter) {
         this.display = display;
         this.codeString = codeString;
+        this.delimiter = delimiter;
     }
 
     public String getCodeString() {
         return codeString;
     }
 
+    /**
+     * @return the delimiter at which the values are split before looping, or null
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
     @Override
     public String toString() {
         return display;
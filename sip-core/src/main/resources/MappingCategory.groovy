@@ -16,6 +16,7 @@
  */
 
 import eu.delving.groovy.GroovyNode
+import eu.delving.groovy.OutputTreeBuilder
 import eu.delving.groovy.PatternCache
 import groovy.transform.CompileStatic
 
@@ -173,7 +174,7 @@ public class MappingCategory {
                 else if (returnValue instanceof String) {
                     output.add(returnValue)
                 }
-                else if (!(returnValue instanceof org.w3c.dom.Node)) {
+                else if (!OutputTreeBuilder.isOutput(returnValue)) {
                     output.add(returnValue.toString())
                 }
             }
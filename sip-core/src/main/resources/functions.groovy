@@ -17,7 +17,6 @@
 
 @groovy.transform.CompileStatic
 String calculateAge(String birthDate, String deathDate, boolean automaticDateReordering = false, boolean ignoreErrors = false) { // #def
-    def dateFormatter = new java.text.SimpleDateFormat("yyyy-MM-dd")
     if (birthDate == null
         || deathDate == null
         || birthDate.isEmpty()
@@ -27,43 +26,41 @@ String calculateAge(String birthDate, String deathDate, boolean automaticDateReo
         return ""
     }
 
-    def parsedBirthDate
-    def parsedDeathDate
+    long parsedBirthDate
+    long parsedDeathDate
     try {
-        parsedBirthDate = dateFormatter.parse(birthDate);
-    } catch (java.text.ParseException e) {
+        parsedBirthDate = eu.delving.groovy.DateFormatters.parseDateMillis(birthDate, "yyyy-MM-dd")
+    } catch (java.time.DateTimeException e) {
         if (ignoreErrors) {
             return ""
         }
         throw new IllegalArgumentException("unable to parse birth date", e)
     }
     try {
-        parsedDeathDate = dateFormatter.parse(deathDate);
-    } catch (java.text.ParseException e) {
+        parsedDeathDate = eu.delving.groovy.DateFormatters.parseDateMillis(deathDate, "yyyy-MM-dd")
+    } catch (java.time.DateTimeException e) {
         if (ignoreErrors) {
             return ""
         }
         throw new IllegalArgumentException("unable to parse death date", e)
     }
 
-    if (parsedBirthDate.after(parsedDeathDate)) {
+    if (parsedBirthDate > parsedDeathDate) {
         if (!automaticDateReordering) {
             if (ignoreErrors) {
                 return ""
             }
             throw new IllegalArgumentException("birth date " + birthDate + " is more recent than death date " + deathDate)
         } else {
-            def birth = parsedBirthDate
-            def death = parsedDeathDate
+            long birth = parsedBirthDate
+            long death = parsedDeathDate
             parsedDeathDate = birth
             parsedBirthDate = death
         }
     }
-    def ageInMilliseconds = parsedDeathDate.getTime() - parsedBirthDate.getTime();
+    long ageInMilliseconds = parsedDeathDate - parsedBirthDate
 
-    Calendar calendar = Calendar.getInstance()
-    calendar.setTimeInMillis(ageInMilliseconds)
-    def age = calendar.get(Calendar.YEAR) - 1970
+    def age = java.time.Instant.ofEpochMilli(ageInMilliseconds).atZone(java.time.ZoneId.systemDefault()).getYear() - 1970
     if (age > 130) {
         return ""
     }
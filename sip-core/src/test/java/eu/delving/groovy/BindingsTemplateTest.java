@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.RecDef;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the bindings prepared once per mapping runner.
+ */
+@SuppressWarnings("unchecked")
+class BindingsTemplateTest {
+
+    private Utils.BindingsTemplate template;
+
+    @BeforeEach
+    void setUp() {
+        InputStream recDefStream = getClass().getResourceAsStream("/codegen/TestCodeGeneration-recdef.xml");
+        assertNotNull(recDefStream, "Test recdef file should exist");
+        RecDef recDef = RecDef.read(recDefStream);
+        template = new Utils.BindingsTemplate(Map.of("provider", "Delving", "spec", "test", "subjects", "one;two;three"),
+                recDef, recDef.valueOptLookup);
+    }
+
+    private static Utils.ScriptBinding world(Utils.BindingsTemplate template, GroovyNode input) {
+        return (Utils.ScriptBinding) template.bindingsFor(input).get("WORLD");
+    }
+
+    @Test
+    void shouldShareConstantsAndRenewPerRecordParts() {
+        GroovyNode first = new GroovyNode(null, "input");
+        GroovyNode second = new GroovyNode(null, "input");
+        Utils.ScriptBinding one = world(template, first);
+        Utils.ScriptBinding two = world(template, second);
+
+        assertSame(one._facts, two._facts);
+        assertSame(one._optLookup, two._optLookup);
+        assertNotSame(one.output, two.output);
+        assertEquals(List.of(first), one.input);
+        assertEquals(List.of(second), two.input);
+
+        GroovyNode facts = ((List<GroovyNode>) one._facts).get(0);
+        assertEquals("Delving", facts.getByName("provider").get(0).text);
+    }
+
+    @Test
+    void shouldRenewFactsChangedByMappingCode() {
+        Utils.ScriptBinding one = world(template, new GroovyNode(null, "input"));
+        GroovyNode facts = ((List<GroovyNode>) one._facts).get(0);
+        new GroovyNode(facts, "provider", "split off");
+
+        Utils.ScriptBinding two = world(template, new GroovyNode(null, "input"));
+        assertNotSame(one._facts, two._facts);
+        assertEquals(1, ((List<GroovyNode>) two._facts).get(0).getByName("provider").size());
+    }
+
+    @Test
+    void shouldKeepFactsApartBetweenThreads() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Object> threadFacts = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(() -> {
+                try {
+                    Object facts = null;
+                    for (int walk = 0; walk < 5000; walk++) {
+                        Utils.ScriptBinding world = template.worldFor(new GroovyNode(null, "input"), null);
+                        List<GroovyNode> factsNode = (List<GroovyNode>) world._facts;
+                        assertEquals(3, factsNode.get(0).getChildren().size());
+                        // the split adds its parts to the facts node, as mapping code does
+                        assertEquals(3, NodeAccess.split(NodeAccess.children(factsNode, "subjects"), ";").size());
+                        facts = factsNode;
+                    }
+                    synchronized (threadFacts) {
+                        threadFacts.add(facts);
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        assertNull(failure.get(), () -> "Failed on a thread: " + failure.get());
+        assertEquals(4, threadFacts.size());
+        for (int one = 0; one < threadFacts.size(); one++) {
+            for (int other = one + 1; other < threadFacts.size(); other++) {
+                assertNotSame(threadFacts.get(one), threadFacts.get(other));
+            }
+        }
+    }
+}
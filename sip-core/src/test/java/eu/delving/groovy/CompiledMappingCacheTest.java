@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiled mappings are kept by their code, least recently used first out, each in a
+ * class loader of its own.
+ */
+class CompiledMappingCacheTest {
+    private final GroovyClassLoader parent = new GroovyClassLoader();
+
+    private Class<?> compile(CompiledMappingCache cache, String code) {
+        return cache.scriptClass(code, "Script1.groovy", parent, null);
+    }
+
+    @Test
+    void shouldKeepRecentlyUsed() {
+        CompiledMappingCache cache = new CompiledMappingCache(2);
+        Class<?> a = compile(cache, "'a'");
+        Class<?> b = compile(cache, "'b'");
+        assertNotSame(a.getClassLoader(), b.getClassLoader());
+        assertSame(parent, a.getClassLoader().getParent().getParent());
+        assertSame(a, compile(cache, "'a'"));
+        compile(cache, "'c'");
+        assertSame(a, compile(cache, "'a'"));
+        assertNotSame(b, compile(cache, "'b'"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void shouldNotConfuseCodeWithSameHashCode() {
+        CompiledMappingCache cache = new CompiledMappingCache();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        Class<?> aa = compile(cache, "'Aa'");
+        Class<?> bb = compile(cache, "'BB'");
+        assertNotSame(aa, bb);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void shouldShrinkAndClear() {
+        CompiledMappingCache cache = new CompiledMappingCache();
+        for (int walk = 0; walk < 5; walk++) {
+            compile(cache, "'" + walk + "'");
+        }
+        cache.setMaxEntries(3);
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getEvictions());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldReportSinceSnapshot() {
+        CompiledMappingCache cache = new CompiledMappingCache(1);
+        compile(cache, "'a'");
+        CompiledMappingCache.Statistics start = cache.snapshot();
+        assertTrue(start.since(start).isEmpty());
+        compile(cache, "'a'");
+        compile(cache, "'b'");
+        CompiledMappingCache.Statistics run = cache.snapshot().since(start);
+        assertEquals(1, run.hits);
+        assertEquals(1, run.misses);
+        assertEquals(1, run.evictions);
+        assertEquals("Compiled mappings: 1 of 1 kept, 1 hits, 1 misses, 1 evictions", run.toString());
+    }
+
+    @Test
+    void shouldGiveEveryMappingScriptItsOwnInstance() {
+        GroovyCodeResource resource = new GroovyCodeResource(getClass().getClassLoader());
+        Script first = resource.createMappingScript("'same'");
+        Script second = resource.createMappingScript("'same'");
+        assertNotSame(first, second);
+        assertNotSame(first.getBinding(), second.getBinding());
+        assertSame(first.getClass(), second.getClass());
+        assertEquals("same", second.run());
+        assertEquals(1, resource.getCompiledMappings().getHits());
+    }
+}
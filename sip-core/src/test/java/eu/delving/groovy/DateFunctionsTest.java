@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The date functions of functions.groovy must answer as they did when they parsed with a
+ * new SimpleDateFormat for every call, which is kept here as the reference.
+ */
+class DateFunctionsTest {
+    private static final String[] ZONES = {"UTC", "Europe/Amsterdam", "America/New_York", "Asia/Kolkata", "Pacific/Apia"};
+    private static final String[] DATES = {
+            "1950-01-01", "1950-1-5", "1950-13-45", "1950-00-00", "1950-02-29", "2000-02-29",
+            "1950-01-01T10:00:00", " 1950-01-01", "1950-01-01abc", "1950-001-01", "19500-01-01", "-1950-01-01",
+            "1950/01/01", "1950-01", "abc", "", "null", "+1950-01-01", "0000-01-01",
+            "1452-04-15", "1500-02-29", "1519-05-02", "1582-10-04", "1582-10-10", "1582-10-15", "1583-01-01",
+            "1879-08-06", "1916-08-06", "1937-07-01", "1970-01-01", "2001-01-01", "2011-01-01", "2024-03-31"
+    };
+
+    private TimeZone defaultZone;
+    private Script functions;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        defaultZone = TimeZone.getDefault();
+        try (InputStream in = getClass().getResourceAsStream("/functions.groovy")) {
+            assertNotNull(in, "Missing functions.groovy");
+            functions = new GroovyShell().parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private static String referenceAge(String birthDate, String deathDate, boolean automaticDateReordering, boolean ignoreErrors) {
+        SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+        if (birthDate == null || deathDate == null || birthDate.isEmpty() || deathDate.isEmpty()
+                || birthDate.equals("null") || deathDate.equals("null")) {
+            return "";
+        }
+        Date parsedBirthDate;
+        Date parsedDeathDate;
+        try {
+            parsedBirthDate = dateFormatter.parse(birthDate);
+        }
+        catch (ParseException e) {
+            if (ignoreErrors) return "";
+            throw new IllegalArgumentException("unable to parse birth date", e);
+        }
+        try {
+            parsedDeathDate = dateFormatter.parse(deathDate);
+        }
+        catch (ParseException e) {
+            if (ignoreErrors) return "";
+            throw new IllegalArgumentException("unable to parse death date", e);
+        }
+        if (parsedBirthDate.after(parsedDeathDate)) {
+            if (!automaticDateReordering) {
+                if (ignoreErrors) return "";
+                throw new IllegalArgumentException("birth date " + birthDate + " is more recent than death date " + deathDate);
+            }
+            Date birth = parsedBirthDate;
+            parsedBirthDate = parsedDeathDate;
+            parsedDeathDate = birth;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(parsedDeathDate.getTime() - parsedBirthDate.getTime());
+        int age = calendar.get(Calendar.YEAR) - 1970;
+        return age > 130 ? "" : String.valueOf(age);
+    }
+
+    private String calculateAge(String birthDate, String deathDate, boolean reorder, boolean ignoreErrors) {
+        try {
+            return (String) functions.invokeMethod("calculateAge", new Object[]{birthDate, deathDate, reorder, ignoreErrors});
+        }
+        catch (IllegalArgumentException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    private static String reference(String birthDate, String deathDate, boolean reorder, boolean ignoreErrors) {
+        try {
+            return referenceAge(birthDate, deathDate, reorder, ignoreErrors);
+        }
+        catch (IllegalArgumentException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    private static List<String[]> pairs() {
+        List<String[]> pairs = new ArrayList<>();
+        for (String birth : DATES) {
+            for (String death : DATES) {
+                pairs.add(new String[]{birth, death});
+            }
+        }
+        Random random = new Random(42);
+        for (int walk = 0; walk < 2000; walk++) {
+            int year = 1400 + random.nextInt(700);
+            String monthDay = String.format("-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+            pairs.add(new String[]{
+                    String.format("%04d", year) + monthDay,
+                    String.format("%04d", year + random.nextInt(120)) + monthDay
+            });
+        }
+        return pairs;
+    }
+
+    @Test
+    void shouldCalculateAgeLikeSimpleDateFormat() {
+        List<String[]> pairs = pairs();
+        for (String zone : ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            for (String[] pair : pairs) {
+                for (int flags = 0; flags < 4; flags++) {
+                    boolean reorder = (flags & 1) != 0;
+                    boolean ignoreErrors = (flags & 2) != 0;
+                    assertEquals(
+                            reference(pair[0], pair[1], reorder, ignoreErrors),
+                            calculateAge(pair[0], pair[1], reorder, ignoreErrors),
+                            String.format("%s %s %s reorder=%s ignoreErrors=%s", zone, pair[0], pair[1], reorder, ignoreErrors));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldCalculateAgeRange() {
+        assertEquals("41 \u2013 50", functions.invokeMethod("calculateAgeRange", new Object[]{"1900-05-01", "1945-05-05", false, false}));
+        assertEquals("0 \u2013 10", functions.invokeMethod("calculateAgeRange", new Object[]{"1900-05-01", "1905-05-05", false, false}));
+        assertEquals("", functions.invokeMethod("calculateAgeRange", new Object[]{"1900-05-01", "never", false, true}));
+    }
+
+    @Test
+    void shouldShareFormatterPerPattern() {
+        assertSame(DateFormatters.forPattern("yyyy-MM-dd"), DateFormatters.forPattern("yyyy-MM-dd"));
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        assertEquals(0L, DateFormatters.parseDateMillis("1970-01-01", "yyyy-MM-dd"));
+        assertEquals(86400000L, DateFormatters.parseDateMillis("1969-12-33", "yyyy-MM-dd"));
+    }
+}
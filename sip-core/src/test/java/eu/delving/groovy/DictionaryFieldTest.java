@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.CodeGenerator;
+import eu.delving.metadata.NodeMapping;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dictionaries generated as static fields of the script must map exactly like the
+ * local maps they replaced, which were built again for every record.
+ */
+class DictionaryFieldTest {
+    private static final Logger LOG = LoggerFactory.getLogger(DictionaryFieldTest.class);
+
+    private RecMapping recMapping;
+    private MetadataRecord record;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RecDef recDef = RecDef.read(resource("recdef"));
+        recMapping = RecMapping.read(resource("mapping"), RecDefTree.create(recDef));
+        try (InputStream in = resource("input")) {
+            String input = "<input id=\"one\">" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</input>";
+            record = new MetadataRecordFactory(new HashMap<>()).metadataRecordFrom(input);
+        }
+    }
+
+    private InputStream resource(String part) {
+        InputStream in = getClass().getResourceAsStream(String.format("/codegen/TestCodeGeneration-%s.xml", part));
+        assertNotNull(in, "Missing test resource " + part);
+        return in;
+    }
+
+    private static String withLocalDictionaries(String code) {
+        return code
+                .replaceAll("@Field static final Map (\\w+) = Collections\\.unmodifiableMap\\(\\[", "def $1 = ([")
+                .replaceAll("@Field static final Map (\\w+) = Collections\\.emptyMap\\(\\)", "def $1 = [:]");
+    }
+
+    private String map(String code) throws Exception {
+        return new XmlSerializer().toXml(new BulkMappingRunner(recMapping, code).runMapping(record), true);
+    }
+
+    @Test
+    void shouldMapIdentically() throws Exception {
+        String code = new CodeGenerator(recMapping).toRecordMappingCode();
+        assertTrue(code.contains("@Field static final Map Dictionary"));
+        String localCode = withLocalDictionaries(code);
+        assertFalse(localCode.contains("@Field static"));
+        assertEquals(map(localCode), map(code));
+    }
+
+    @Test
+    void compareWithLocalDictionaries() throws Exception {
+        for (NodeMapping nodeMapping : recMapping.getRecDefTree().getNodeMappings()) {
+            if (nodeMapping.hasDictionary()) {
+                for (int walk = 0; walk < 1000; walk++) {
+                    nodeMapping.dictionary.put("value " + walk, "option " + walk);
+                }
+            }
+        }
+        String code = new CodeGenerator(recMapping).toRecordMappingCode();
+        BulkMappingRunner fieldRunner = new BulkMappingRunner(recMapping, code);
+        BulkMappingRunner localRunner = new BulkMappingRunner(recMapping, withLocalDictionaries(code));
+        int count = 500;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                localRunner.runMapping(record);
+            }
+            long localTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                fieldRunner.runMapping(record);
+            }
+            long fieldTime = System.nanoTime() - start;
+            LOG.info("{} records: local dictionaries {} ms, static fields {} ms", count,
+                    localTime / 1000000, fieldTime / 1000000);
+        }
+    }
+}
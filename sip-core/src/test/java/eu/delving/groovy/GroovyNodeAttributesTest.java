@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The attributes of a GroovyNode must behave as a map, checked against a HashMap, and
+ * iterate in key order. Nodes of the same name share one QName per namespace and prefix.
+ */
+class GroovyNodeAttributesTest {
+
+    private static void assertSameAs(Map<String, String> expected, Map<String, String> attributes) {
+        assertEquals(expected, attributes);
+        assertEquals(attributes, expected);
+        assertEquals(expected.hashCode(), attributes.hashCode());
+        assertEquals(expected.size(), attributes.size());
+        assertEquals(new ArrayList<>(new TreeMap<>(expected).keySet()), new ArrayList<>(attributes.keySet()));
+    }
+
+    @Test
+    void shouldPutOverwriteAndRemove() {
+        Map<String, String> attributes = new GroovyNode(null, "record").attributes();
+        Map<String, String> expected = new HashMap<>();
+        for (String key : new String[]{"m", "c", "x", "a", "q"}) {
+            assertEquals(expected.put(key, key.toUpperCase()), attributes.put(key, key.toUpperCase()));
+        }
+        assertSameAs(expected, attributes);
+        assertEquals(expected.put("c", "again"), attributes.put("c", "again"));
+        assertEquals("again", attributes.get("c"));
+        assertSameAs(expected, attributes);
+        assertEquals(expected.remove("a"), attributes.remove("a"));
+        assertEquals(expected.remove("absent"), attributes.remove("absent"));
+        assertNull(attributes.remove(42));
+        assertNull(attributes.get(42));
+        assertFalse(attributes.containsKey(42));
+        assertSameAs(expected, attributes);
+        attributes.clear();
+        expected.clear();
+        assertSameAs(expected, attributes);
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    void shouldRemoveThroughIterator() {
+        GroovyNode node = new GroovyNode(null, "record");
+        Map<String, String> expected = new HashMap<>();
+        for (int walk = 0; walk < 10; walk++) {
+            node.attributes().put("key" + walk, "value" + walk);
+            expected.put("key" + walk, "value" + walk);
+        }
+        Iterator<Map.Entry<String, String>> iterator = node.attributes().entrySet().iterator();
+        assertThrows(IllegalStateException.class, iterator::remove);
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().compareTo("key5") < 0) {
+                iterator.remove();
+                assertThrows(IllegalStateException.class, iterator::remove);
+            }
+            else {
+                entry.setValue(entry.getValue() + "!");
+            }
+        }
+        expected.keySet().removeIf(key -> key.compareTo("key5") < 0);
+        expected.replaceAll((key, value) -> value + "!");
+        assertSameAs(expected, node.attributes());
+        node.attributes().keySet().removeIf(key -> key.endsWith("9"));
+        expected.remove("key9");
+        assertSameAs(expected, node.attributes());
+    }
+
+    @Test
+    void shouldBehaveLikeHashMap() {
+        Random random = new Random(7);
+        GroovyNode node = new GroovyNode(null, "record");
+        Map<String, String> expected = new HashMap<>();
+        for (int walk = 0; walk < 5000; walk++) {
+            String key = "k" + random.nextInt(20);
+            String value = "v" + random.nextInt(5);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, value), node.attributes().put(key, value));
+                    break;
+                case 2:
+                    assertEquals(expected.remove(key), node.attributes().remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), node.attributes().get(key));
+                    assertEquals(expected.containsKey(key), node.attributes().containsKey(key));
+            }
+            assertSameAs(expected, node.attributes());
+        }
+    }
+
+    @Test
+    void shouldCopyAttributesGivenToConstructor() {
+        Map<String, String> given = new HashMap<>();
+        given.put("b", "2");
+        given.put("a", "1");
+        GroovyNode node = new GroovyNode(null, new GroovyNode(null, "record").qName(), given, "text");
+        assertSameAs(given, node.attributes());
+        node.attributes().put("c", "3");
+        assertFalse(given.containsKey("c"));
+    }
+
+    @Test
+    void shouldShareNamesPerNamespace() {
+        List<GroovyNode> nodes = new ArrayList<>();
+        for (String namespace : new String[]{"", "http://purl.org/dc/elements/1.1/", "http://purl.org/dc/terms/"}) {
+            nodes.add(new GroovyNode(null, namespace, "title", "x"));
+            nodes.add(new GroovyNode(null, namespace, "title", "x"));
+        }
+        for (int walk = 0; walk < nodes.size(); walk += 2) {
+            assertSame(nodes.get(walk).qName(), nodes.get(walk + 1).qName());
+            assertEquals("title", nodes.get(walk).qName().getLocalPart());
+        }
+        assertEquals("http://purl.org/dc/terms/", nodes.get(4).qName().getNamespaceURI());
+        assertNotSame(nodes.get(2).qName(), nodes.get(4).qName());
+        GroovyNode otherPrefix = new GroovyNode(null, "http://purl.org/dc/terms/", "title", "y");
+        assertEquals("y", otherPrefix.qName().getPrefix());
+        assertNotSame(nodes.get(4).qName(), otherPrefix.qName());
+    }
+}
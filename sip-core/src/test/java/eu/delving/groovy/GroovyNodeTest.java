@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import groovy.util.NodeList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for looking up the children of a GroovyNode by name, with and without the index.
+ */
+class GroovyNodeTest {
+
+    private static List<GroovyNode> scan(GroovyNode node, String name) {
+        List<GroovyNode> answer = new ArrayList<>();
+        for (GroovyNode child : node.getChildren()) {
+            if (name.equals(child.getNodeName())) answer.add(child);
+        }
+        return answer;
+    }
+
+    @Test
+    void shouldFindChildrenInOrderOnWideNodes() {
+        GroovyNode record = new GroovyNode(null, "record");
+        for (int walk = 0; walk < 300; walk++) {
+            new GroovyNode(record, "field" + walk % 30, "value " + walk);
+        }
+        for (int walk = 0; walk < 30; walk++) {
+            Object found = record.get("field" + walk);
+            assertTrue(found instanceof NodeList);
+            assertEquals(scan(record, "field" + walk), found);
+            assertEquals(10, ((List<?>) found).size());
+        }
+        assertEquals(0, ((List<?>) record.get("absent")).size());
+    }
+
+    @Test
+    void shouldSeeChildrenAddedAfterLookup() {
+        GroovyNode record = new GroovyNode(null, "record");
+        for (int walk = 0; walk < 20; walk++) {
+            new GroovyNode(record, "title", "title " + walk);
+        }
+        assertEquals(20, ((List<?>) record.get("title")).size());
+        GroovyNode late = new GroovyNode(record, "title", "late");
+        List<?> titles = (List<?>) record.get("title");
+        assertEquals(21, titles.size());
+        assertSame(late, titles.get(20));
+    }
+
+    @Test
+    void shouldNotExposeTheIndex() {
+        GroovyNode record = new GroovyNode(null, "record");
+        for (int walk = 0; walk < 20; walk++) {
+            new GroovyNode(record, "subject", "subject " + walk);
+        }
+        ((List<?>) record.get("subject")).clear();
+        assertEquals(20, ((List<?>) record.get("subject")).size());
+    }
+}
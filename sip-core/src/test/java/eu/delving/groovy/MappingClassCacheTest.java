@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.CodeGenerator;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A mapping compiled once is defined from the class files in the cache directory by a later
+ * cache on the same directory, and must map the same as a freshly compiled one.
+ */
+class MappingClassCacheTest {
+    private static final Logger LOG = LoggerFactory.getLogger(MappingClassCacheTest.class);
+    private static final String CODE = String.join("\n",
+            "class Helper { static String up(s) { s.toUpperCase() } }",
+            "['a', 'b'].collect { Helper.up(it) + suffix }.join(',')"
+    );
+
+    @TempDir
+    File dir;
+
+    private RecMapping recMapping;
+    private String code;
+    private MetadataRecord record;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RecDef recDef = RecDef.read(resource("recdef"));
+        recMapping = RecMapping.read(resource("mapping"), RecDefTree.create(recDef));
+        code = new CodeGenerator(recMapping).toRecordMappingCode();
+        try (InputStream in = resource("input")) {
+            String input = "<input id=\"one\">" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</input>";
+            record = new MetadataRecordFactory(new HashMap<>()).metadataRecordFrom(input);
+        }
+    }
+
+    private InputStream resource(String part) {
+        InputStream in = getClass().getResourceAsStream(String.format("/codegen/TestCodeGeneration-%s.xml", part));
+        assertNotNull(in, "Missing test resource " + part);
+        return in;
+    }
+
+    private static Object run(Class<?> scriptClass, String suffix) {
+        Binding binding = new Binding();
+        binding.setVariable("suffix", suffix);
+        return InvokerHelper.createScript(scriptClass, binding).run();
+    }
+
+    @Test
+    void shouldDefineFromEarlierCompilation() {
+        GroovyClassLoader loader = new GroovyClassLoader();
+        MappingClassCache first = new MappingClassCache(dir);
+        assertEquals("A!,B!", run(first.scriptClass(CODE, "Script1.groovy", loader), "!"));
+        assertEquals(0, first.getHits());
+        assertEquals(1, first.getMisses());
+        assertEquals(1, dir.list().length);
+
+        MappingClassCache second = new MappingClassCache(dir);
+        assertEquals("A?,B?", run(second.scriptClass(CODE, "Script1.groovy", loader), "?"));
+        assertEquals(1, second.getHits());
+        assertEquals(0, second.getMisses());
+    }
+
+    @Test
+    void shouldPreferOwnClassesOverParent() {
+        GroovyClassLoader loader = new GroovyClassLoader();
+        loader.parseClass("'stale'", "Script1.groovy");
+        Class<?> scriptClass = new MappingClassCache(dir).scriptClass(CODE, "Script1.groovy", loader);
+        assertEquals("A!,B!", run(scriptClass, "!"));
+    }
+
+    @Test
+    void shouldCompileAgainWhenUnreadable() throws Exception {
+        GroovyClassLoader loader = new GroovyClassLoader();
+        new MappingClassCache(dir).scriptClass(CODE, "Script1.groovy", loader);
+        File[] entries = dir.listFiles();
+        assertNotNull(entries);
+        Files.write(entries[0].toPath(), new byte[]{1, 2, 3});
+        MappingClassCache cache = new MappingClassCache(dir);
+        assertEquals("A!,B!", run(cache.scriptClass(CODE, "Script1.groovy", loader), "!"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void shouldCompileAgainWhenLengthIsCorrupt() throws Exception {
+        GroovyClassLoader loader = new GroovyClassLoader();
+        new MappingClassCache(dir).scriptClass(CODE, "Script1.groovy", loader);
+        File[] entries = dir.listFiles();
+        assertNotNull(entries);
+        for (int length : new int[]{-1, Integer.MAX_VALUE}) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(entries[0]))) {
+                out.writeInt(1);
+                out.writeUTF("Script1");
+                out.writeInt(1);
+                out.writeUTF("Script1");
+                out.writeInt(length);
+            }
+            MappingClassCache cache = new MappingClassCache(dir);
+            assertEquals("A!,B!", run(cache.scriptClass(CODE, "Script1.groovy", loader), "!"));
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    void shouldKeyOnCodeAndScriptName() {
+        String key = MappingClassCache.key(CODE, "Script1.groovy");
+        assertEquals(64, key.length());
+        assertEquals(key, MappingClassCache.key(CODE, "Script1.groovy"));
+        assertNotEquals(key, MappingClassCache.key(CODE, "Script2.groovy"));
+        assertNotEquals(key, MappingClassCache.key(CODE + " ", "Script1.groovy"));
+    }
+
+    @Test
+    void shouldNotCacheFailedCompilation() {
+        MappingClassCache cache = new MappingClassCache(dir);
+        assertThrows(CompilationFailedException.class,
+                () -> cache.scriptClass("def x = ", "Script1.groovy", new GroovyClassLoader()));
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    void shouldNotKeepMappingsBeingEdited() {
+        MappingClassCache cache = new MappingClassCache(dir);
+        GroovyCodeResource resource = new GroovyCodeResource(getClass().getClassLoader(), cache);
+        assertEquals("edited", resource.createMappingScript("'edited'").run());
+        assertSame(cache, resource.getClassCache());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    void shouldMapLikeCompiledRunner() throws Exception {
+        XmlSerializer serializer = new XmlSerializer();
+        String expected = new BulkMappingRunner(recMapping, code).runMappingToXml(record, serializer);
+        long start = System.nanoTime();
+        BulkMappingRunner compiled = new BulkMappingRunner(recMapping, code, new MappingClassCache(dir));
+        long compileTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        BulkMappingRunner loaded = new BulkMappingRunner(recMapping, code, new MappingClassCache(dir));
+        long loadTime = System.nanoTime() - start;
+        LOG.info("Mapping runner: compiled in {} ms, from cache in {} ms", compileTime / 1000000, loadTime / 1000000);
+        assertEquals(expected, compiled.runMappingToXml(record, serializer));
+        assertEquals(expected, loaded.runMappingToXml(record, serializer));
+    }
+}
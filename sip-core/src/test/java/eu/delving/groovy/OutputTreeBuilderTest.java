@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.CodeGenerator;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+
+import javax.script.CompiledScript;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The OutputTreeBuilder must give the same output as the DOMBuilder followed by stripping
+ * the empty elements, both as a DOM and as XML.
+ */
+class OutputTreeBuilderTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OutputTreeBuilderTest.class);
+    private static final String BUILDER_CODE = String.join("\n",
+            "out.'test:test'('test:sortorder': { 'thisaway' }) {",
+            "  'test:id' { 'thisaway' }",
+            "  'test:empty' { '  ' }",
+            "  'test:emptier' { 'test:inner' { '' } }",
+            "  'test:sub' { ['a', 'b'].collect { v -> 'test:x' { v } } }",
+            "  'test:multi' { ['one', ' ', 'two'] }",
+            "  'test:mixed' { 'test:y' { 'z' }; 'text' }",
+            "  'test:cdata' { \"<![CDATA[<]]>O'Po<![CDATA[k]]>ey<![CDATA[ ]]>\" }",
+            "  'test:attrs'('test:a': ['1', '2']) { ['t1', 't2'] }",
+            "  'test:kept'('test:a': '') { }",
+            "}"
+    );
+
+    private RecDef recDef;
+    private RecMapping recMapping;
+    private MetadataRecord record;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        recDef = RecDef.read(resource("recdef"));
+        recMapping = RecMapping.read(resource("mapping"), RecDefTree.create(recDef));
+        try (InputStream in = resource("input")) {
+            String input = "<input id=\"one\">" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</input>";
+            record = new MetadataRecordFactory(new HashMap<>()).metadataRecordFrom(input);
+        }
+    }
+
+    private InputStream resource(String part) {
+        InputStream in = getClass().getResourceAsStream(String.format("/codegen/TestCodeGeneration-%s.xml", part));
+        assertNotNull(in, "Missing test resource " + part);
+        return in;
+    }
+
+    private static Object build(Object builder) {
+        Binding binding = new Binding();
+        binding.setVariable("out", builder);
+        return new GroovyShell(binding).evaluate(BUILDER_CODE);
+    }
+
+    private Node mapWithDOMBuilder(CompiledScript script, Utils.BindingsTemplate template) throws Exception {
+        return Utils.stripEmptyElements(script.eval(template.bindingsFor(record.getRootNode())));
+    }
+
+    @Test
+    void shouldBuildLikeStrippedDOM() {
+        XmlSerializer serializer = new XmlSerializer();
+        Node dom = Utils.stripEmptyElements(build(DOMBuilder.createFor(recDef)));
+        Object tree = build(OutputTreeBuilder.createFor(recDef));
+        assertTrue(dom.isEqualNode(OutputTreeBuilder.toNode(tree)));
+        String xml = serializer.toXml(dom, true);
+        assertEquals(xml, serializer.toXml((OutputTreeBuilder.OutputElement) tree));
+        assertFalse(xml.contains("empty"));
+        assertTrue(xml.contains("<test:kept test:a=\"\">"));
+        assertTrue(xml.contains("<test:multi>one</test:multi>\n    <test:multi>two</test:multi>"));
+    }
+
+    @Test
+    void shouldMapLikeStrippedDOM() throws Exception {
+        String code = new CodeGenerator(recMapping).toRecordMappingCode();
+        CompiledScript script = EngineHolder.getInstance().compile(code);
+        Utils.BindingsTemplate template = new Utils.BindingsTemplate(recMapping.getFacts(), recDef, recDef.valueOptLookup);
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, code);
+        XmlSerializer serializer = new XmlSerializer();
+
+        Node dom = mapWithDOMBuilder(script, template);
+        Node tree = runner.runMapping(record);
+        assertTrue(dom.isEqualNode(tree));
+        String xml = serializer.toXml(dom, true);
+        assertEquals(xml, serializer.toXml(tree, true));
+        assertEquals(xml, runner.runMappingToXml(record, serializer));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareRecordsPerSecond() throws Exception {
+        String code = new CodeGenerator(recMapping).toRecordMappingCode();
+        CompiledScript script = EngineHolder.getInstance().compile(code);
+        Utils.BindingsTemplate template = new Utils.BindingsTemplate(recMapping.getFacts(), recDef, recDef.valueOptLookup);
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, code);
+        XmlSerializer serializer = new XmlSerializer();
+        int count = 2000;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                serializer.toXml(mapWithDOMBuilder(script, template), true);
+            }
+            long domTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                serializer.toXml(runner.runMapping(record), true);
+            }
+            long treeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                runner.runMappingToXml(record, serializer);
+            }
+            long xmlTime = System.nanoTime() - start;
+            LOG.info("{} records to XML: stripped DOM {} records/s, tree via DOM {} records/s, tree directly {} records/s",
+                    count, count * 1000000000L / domTime, count * 1000000000L / treeTime, count * 1000000000L / xmlTime);
+        }
+    }
+}
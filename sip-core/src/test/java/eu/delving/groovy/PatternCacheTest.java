@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The pattern cache stays within its size, keeps the patterns in use, and can compile the
+ * literal expressions of mapping code in advance.
+ */
+class PatternCacheTest {
+
+    @BeforeEach
+    void setUp() {
+        PatternCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        PatternCache.setMaxSize(PatternCache.DEFAULT_MAX_SIZE);
+        PatternCache.clear();
+    }
+
+    @Test
+    void shouldKeepPatternsInUse() {
+        PatternCache.setMaxSize(4);
+        Pattern used = PatternCache.getPattern("a+");
+        for (int walk = 0; walk < 20; walk++) {
+            PatternCache.getPattern("dynamic" + walk);
+            assertSame(used, PatternCache.getPattern("a+"));
+        }
+        assertTrue(PatternCache.size() <= 4);
+        assertEquals(21, PatternCache.getMisses());
+        assertEquals(20, PatternCache.getHits());
+        assertEquals(17, PatternCache.getEvictions());
+    }
+
+    @Test
+    void shouldPrecompileLiterals() {
+        String code = String.join("\n",
+                "_input.split('\\\\s*;\\\\s*').each { }",
+                "it.replaceAll(\"[()]\", '')",
+                "it.matches('\\\\d{4}')",
+                "it.replaceAll(\"${dynamic}\", '')",
+                "it.split('[')"
+        );
+        assertEquals(3, PatternCache.precompileLiterals(code));
+        assertEquals(0, PatternCache.getMisses());
+        PatternCache.getPattern("\\s*;\\s*");
+        PatternCache.getPattern("[()]");
+        PatternCache.getPattern("\\d{4}");
+        assertEquals(3, PatternCache.getHits());
+        assertEquals(0, PatternCache.getMisses());
+    }
+
+    @Test
+    void shouldUnescapeUnicodeInLiterals() {
+        String code = String.join("\n",
+                "it.split('\\u00e9|\\u2013')",
+                "it.replaceAll(\"\\\\s+\\u0020\", '')",
+                "it.matches('\\u00zz')"
+        );
+        assertEquals(2, PatternCache.precompileLiterals(code));
+        assertEquals(2, PatternCache.size());
+        PatternCache.getPattern("\u00e9|\u2013");
+        PatternCache.getPattern("\\s+ ");
+        assertEquals(2, PatternCache.getHits());
+        assertEquals(0, PatternCache.getMisses());
+    }
+
+    @Test
+    void shouldReportDifferenceSinceSnapshot() {
+        PatternCache.getPattern("a");
+        PatternCache.Statistics start = PatternCache.snapshot();
+        PatternCache.getPattern("a");
+        PatternCache.getPattern("b");
+        PatternCache.Statistics run = PatternCache.snapshot().since(start);
+        assertEquals(1, run.hits);
+        assertEquals(1, run.misses);
+        assertFalse(run.isEmpty());
+        assertTrue(PatternCache.snapshot().since(PatternCache.snapshot()).isEmpty());
+    }
+
+    @Test
+    void shouldStayBoundedOnSeveralThreads() throws Exception {
+        PatternCache.setMaxSize(100);
+        List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(() -> {
+                for (int walk = 0; walk < 10000; walk++) {
+                    String regex = "p" + walk % 300;
+                    assertEquals(regex, PatternCache.getPattern(regex).pattern());
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        assertTrue(PatternCache.size() <= 100);
+        assertEquals(40000, PatternCache.getHits() + PatternCache.getMisses());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.CodeGenerator;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.CompiledScript;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The BulkMappingRunner keeps a script instance per thread instead of evaluating a compiled
+ * script through the script engine for every record, which must not change what it maps.
+ */
+class ScriptReuseTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptReuseTest.class);
+
+    private RecDef recDef;
+    private RecMapping recMapping;
+    private String code;
+    private MetadataRecord record;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        recDef = RecDef.read(resource("recdef"));
+        recMapping = RecMapping.read(resource("mapping"), RecDefTree.create(recDef));
+        code = new CodeGenerator(recMapping).toRecordMappingCode();
+        try (InputStream in = resource("input")) {
+            String input = "<input id=\"one\">" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</input>";
+            record = new MetadataRecordFactory(new HashMap<>()).metadataRecordFrom(input);
+        }
+    }
+
+    private InputStream resource(String part) {
+        InputStream in = getClass().getResourceAsStream(String.format("/codegen/TestCodeGeneration-%s.xml", part));
+        assertNotNull(in, "Missing test resource " + part);
+        return in;
+    }
+
+    private Object evalWithEngine(CompiledScript script, Utils.BindingsTemplate template) throws Exception {
+        return script.eval(template.bindingsFor(record.getRootNode(), OutputTreeBuilder.createFor(recDef)));
+    }
+
+    @Test
+    void shouldMapLikeTheScriptEngine() throws Exception {
+        CompiledScript script = EngineHolder.getInstance().compile(code);
+        Utils.BindingsTemplate template = new Utils.BindingsTemplate(recMapping.getFacts(), recDef, recDef.valueOptLookup);
+        XmlSerializer serializer = new XmlSerializer();
+        String expected = serializer.toXml(OutputTreeBuilder.toNode(evalWithEngine(script, template)), true);
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, code);
+        for (int walk = 0; walk < 3; walk++) {
+            assertEquals(expected, serializer.toXml(runner.runMapping(record), true));
+        }
+    }
+
+    @Test
+    void shouldMapOnSeveralThreads() throws Exception {
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, code);
+        String expected = runner.runMappingToXml(record, new XmlSerializer());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    XmlSerializer serializer = new XmlSerializer();
+                    List<String> results = new ArrayList<>();
+                    for (int walk = 0; walk < 50; walk++) {
+                        results.add(runner.runMappingToXml(record, serializer));
+                    }
+                    return results;
+                }));
+            }
+            for (Future<List<String>> future : futures) {
+                for (String result : future.get()) {
+                    assertEquals(expected, result);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldMapTheSameWithoutReuse() throws Exception {
+        BulkMappingRunner reused = new BulkMappingRunner(recMapping, code);
+        BulkMappingRunner singleUse = new BulkMappingRunner(recMapping, code, null, false);
+        XmlSerializer serializer = new XmlSerializer();
+        String expected = reused.runMappingToXml(record, serializer);
+        for (int walk = 0; walk < 2; walk++) {
+            assertEquals(expected, singleUse.runMappingToXml(record, serializer));
+        }
+    }
+
+    @Test
+    void shouldStartEveryRecordWithAFreshBinding() throws Exception {
+        String leakyCode = String.join("\n",
+                "def seen = binding.variables.containsKey('leak')",
+                "leak = true",
+                "WORLD.output.'test:test' { 'test:id' { seen.toString() } }"
+        );
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, leakyCode);
+        for (int walk = 0; walk < 2; walk++) {
+            assertEquals("false", runner.runMapping(record).getTextContent());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareRecordsPerSecond() throws Exception {
+        CompiledScript script = EngineHolder.getInstance().compile(code);
+        Utils.BindingsTemplate template = new Utils.BindingsTemplate(recMapping.getFacts(), recDef, recDef.valueOptLookup);
+        BulkMappingRunner runner = new BulkMappingRunner(recMapping, code);
+        int count = 2000;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                OutputTreeBuilder.toNode(evalWithEngine(script, template));
+            }
+            long engineTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                runner.runMapping(record);
+            }
+            long reuseTime = System.nanoTime() - start;
+            LOG.info("{} records: script engine {} records/s, reused script {} records/s", count,
+                    count * 1000000000L / engineTime, count * 1000000000L / reuseTime);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import eu.delving.metadata.CodeGenerator;
+import eu.delving.metadata.RecDef;
+import eu.delving.metadata.RecDefTree;
+import eu.delving.metadata.RecMapping;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Generated code with static navigation must map exactly like the dynamic code.
+ */
+class StaticNavigationTest {
+    private static final Logger LOG = LoggerFactory.getLogger(StaticNavigationTest.class);
+
+    private RecMapping recMapping;
+    private String input;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RecDef recDef = RecDef.read(resource("recdef"));
+        recMapping = RecMapping.read(resource("mapping"), RecDefTree.create(recDef));
+        try (InputStream in = resource("input")) {
+            input = "<input id=\"one\">" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</input>";
+        }
+    }
+
+    private InputStream resource(String part) {
+        InputStream in = getClass().getResourceAsStream(String.format("/codegen/TestCodeGeneration-%s.xml", part));
+        assertNotNull(in, "Missing test resource " + part);
+        return in;
+    }
+
+    private MetadataRecord record() throws Exception {
+        return new MetadataRecordFactory(new HashMap<>()).metadataRecordFrom(input);
+    }
+
+    private String map(String code) throws Exception {
+        return new XmlSerializer().toXml(new BulkMappingRunner(recMapping, code).runMapping(record()), true);
+    }
+
+    @Test
+    void shouldMapIdentically() throws Exception {
+        String dynamicCode = new CodeGenerator(recMapping).toRecordMappingCode();
+        String staticCode = new CodeGenerator(recMapping).withStaticNavigation(true).toRecordMappingCode();
+        assertFalse(dynamicCode.contains("NodeAccess"));
+        assertTrue(staticCode.contains("NodeAccess.all(NodeAccess.children(_input, 'leadup')) { GroovyNode _leadup ->"));
+        // the node mapping with code of its own keeps its dynamic loop
+        assertTrue(staticCode.contains("_member.name * { _name ->"));
+        assertEquals(map(dynamicCode), map(staticCode));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareRecordsPerSecond() throws Exception {
+        BulkMappingRunner dynamicRunner = new BulkMappingRunner(recMapping,
+                new CodeGenerator(recMapping).toRecordMappingCode());
+        BulkMappingRunner staticRunner = new BulkMappingRunner(recMapping,
+                new CodeGenerator(recMapping).withStaticNavigation(true).toRecordMappingCode());
+        MetadataRecord record = record();
+        int count = 2000;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                dynamicRunner.runMapping(record);
+            }
+            long dynamicTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int walk = 0; walk < count; walk++) {
+                staticRunner.runMapping(record);
+            }
+            long staticTime = System.nanoTime() - start;
+            LOG.info("{} records: dynamic {} records/s, static navigation {} records/s", count,
+                    count * 1000000000L / dynamicTime, count * 1000000000L / staticTime);
+        }
+    }
+}
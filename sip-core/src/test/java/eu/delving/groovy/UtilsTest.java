@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011-2025 Delving BV
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package eu.delving.groovy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Utils.stripNonPrinting, checked against the regular expression it replaced.
+ */
+class UtilsTest {
+
+    private static String regexStrip(String string) {
+        return string.replaceAll("[\\p{Cc}&&[^\r\n\t]]", "");
+    }
+
+    @Test
+    void shouldReturnSameInstanceWhenClean() {
+        String clean = "Plain text with tabs\t, newlines\r\n and \u00fcn\u00efc\u00f6d\u00e9 \uD83D\uDE00";
+        assertSame(clean, Utils.stripNonPrinting(clean));
+        assertSame("", Utils.stripNonPrinting(""));
+    }
+
+    @Test
+    void shouldStripControlCharacters() {
+        assertEquals("abc", Utils.stripNonPrinting("\u0000a\u0007b\u007Fc\u009F"));
+        assertEquals("a\tb\nc\r", Utils.stripNonPrinting("a\tb\u0001\nc\r\u0085"));
+    }
+
+    @Test
+    void shouldMatchRegexOnEveryCharacter() {
+        for (char c = 0; c < 0x200; c++) {
+            String string = "x" + c + "y";
+            assertEquals(regexStrip(string), Utils.stripNonPrinting(string), "char " + (int) c);
+        }
+    }
+
+    @Test
+    void shouldMatchRegexOnRandomStrings() {
+        Random random = new Random(42);
+        char[] interesting = {'\u0000', '\t', '\n', '\r', '\u001F', ' ', 'a', '~', '\u007F', '\u0085',
+                '\u009F', '\u00A0', '\u00E9', '\u2028', '\uD83D', '\uDE00', '\uFFFF'};
+        for (int round = 0; round < 10000; round++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int walk = 0; walk < chars.length; walk++) {
+                chars[walk] = random.nextBoolean()
+                        ? interesting[random.nextInt(interesting.length)]
+                        : (char) random.nextInt(Character.MAX_VALUE + 1);
+            }
+            String string = new String(chars);
+            assertEquals(regexStrip(string), Utils.stripNonPrinting(string));
+        }
+    }
+}